@@ -58,6 +58,10 @@ public class ClientManager {
         clientLock.lock();
 
         try {
+            // ends the session still running on the client
+            if (this.client != null && this.isRunning.get()) {
+                this.client.shutdown(false);
+            }
             this.client = null;
             this.isRunning.set(false);
         } finally {
@@ -26,7 +26,6 @@ import androidx.navigation.ui.NavigationUI;
 
 import dev.dacbiet.opusenclient.Client;
 import dev.dacbiet.opusenclient.NfcHandler;
-import dev.dacbiet.opusenclient.actions.ActionException;
 import dev.dacbiet.test.databinding.ActivityMainBinding;
 
 import android.view.Menu;
@@ -149,97 +148,60 @@ public class MainActivity extends AppCompatActivity implements NfcAdapter.Reader
                 if(OpusCard.isConnected()) {
                     Log.i(TAG, "Opus connected");
 
-                    NfcHandler nfcHandler = (data) -> {
-                        try {
-//                            System.out.println("NFC command data: " + ClientManager.bytesToHex(data));
-                            byte[] resp = OpusCard.transceive(data);
-//                            System.out.println("NFC response data: " + ClientManager.bytesToHex(resp));
-                            return resp;
-                        } catch (IOException e) {
-                            if(e instanceof TagLostException) {
-                                vibrate();
+                    NfcHandler nfcHandler = new NfcHandler() {
+                        @Override
+                        public byte[] send(byte[] data) {
+                            try {
+//                                System.out.println("NFC command data: " + ClientManager.bytesToHex(data));
+                                byte[] resp = OpusCard.transceive(data);
+//                                System.out.println("NFC response data: " + ClientManager.bytesToHex(resp));
+                                return resp;
+                            } catch (IOException e) {
+                                if(e instanceof TagLostException) {
+                                    vibrate();
+                                }
+                                e.printStackTrace();
                             }
-                            e.printStackTrace();
+                            return null;
+                        }
+
+                        @Override
+                        public boolean isExtendedLengthSupported() {
+                            return OpusCard.isExtendedLengthApduSupported();
                         }
-                        return null;
                     };
 
 
                     if (!clientManager.isRunning() && clientManager.getClient() != null) {
-                        Thread t = new Thread(() -> {
-                            clientManager.startClient(nfcHandler);
-                            Client client = clientManager.getClient();
-
-                            if (client == null) {
-                                return;
-                            }
-                            client.start();
-
-                            try {
+                        clientManager.startClient(nfcHandler);
+                        Client client = clientManager.getClient();
 
-                                client.awaitPreInit();
-                                Log.i("S_CLIENT", "Begin execution of init actions...");
-                                while (clientManager.isRunning() && !client.isFinished() && client.hasActions()) {
-                                    if (!OpusCard.isConnected()) {
-                                        throw new ActionException("Opus disconnected while executing initial actions.");
-                                    }
-
-                                    if (client.hasActions()) {
-                                        client.executeAction();
-                                    }
-                                    // sleep
-                                    Thread.sleep(10);
-                                }
-                                if (!clientManager.isRunning()) {
-                                    throw new Exception("Client should stop (init)");
-                                }
+                        if (client == null) {
+                            return;
+                        }
 
-                                client.awaitInit();
-                                Log.i("S_CLIENT", "Begin execution of actions...");
-                                while (clientManager.isRunning() && !client.isFinished()) {
-                                    if (!OpusCard.isConnected()) {
-                                        throw new ActionException("Opus disconnected while executing actions.");
-                                    }
-
-                                    if (client.hasActions()) {
-                                        client.executeAction();
-                                    }
-                                    // sleep
-                                    Thread.sleep(10);
-                                }
-                                if (!clientManager.isRunning()) {
-                                    throw new Exception("Client should stop ()");
-                                }
+                        // actions run on the client's worker as soon as they are queued;
+                        // a lost tag fails the next transceive and a reset shuts the client down
+                        Log.i("S_CLIENT", "Begin execution of actions...");
+                        client.startAsync().whenComplete((result, error) -> {
+                            if (error != null) {
+                                System.out.println("Something happened to the client execution...");
+                                error.printStackTrace();
+                            } else {
+                                Log.i("S_CLIENT", "Session ended: " + result);
+                            }
 
-                                if(!client.isFinished()) {
-                                    client.shutdown(false);
-                                }
+                            if (clientManager.isRunning()) {
                                 clientManager.reset();
+                            }
 
-                                Log.i("S_CLIENT", "Thread dead");
-
-                            } catch (InterruptedException e) {
-                                System.out.println("Issue while executing client...");
-                                e.printStackTrace();
-                            } catch (ActionException e) {
-                                System.out.println("Opus disconnection while running client...");
-                                e.printStackTrace();
-                            } catch (Exception e) {
-                                System.out.println("Something happened to the client execution...");
-                                e.printStackTrace();
-                            } finally {
-                                try {
-                                    client.shutdown(false);
-
-                                    OpusCard.close();
-                                    vibrate();
-                                } catch (IOException e) {
+                            try {
+                                OpusCard.close();
+                                vibrate();
+                            } catch (IOException e) {
 
-                                }
                             }
-
                         });
-                        t.start();
                     } else {
                         // perhaps needs to be thread safe
                         clientManager.reset();
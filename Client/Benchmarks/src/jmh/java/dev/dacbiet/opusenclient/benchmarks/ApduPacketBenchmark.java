@@ -0,0 +1,86 @@
+package dev.dacbiet.opusenclient.benchmarks;
+
+import dev.dacbiet.opusenclient.packets.Apdu;
+import dev.dacbiet.opusenclient.packets.ApduBatch;
+import dev.dacbiet.opusenclient.packets.ApduCodec;
+import dev.dacbiet.opusenclient.packets.ApduDataPacket;
+import dev.dacbiet.opusenclient.packets.ApduResponseDataPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OPUS packets exchanged once per round trip during the APDU exchange.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApduPacketBenchmark {
+
+    // commands per packet, from a lone select to reading a whole contract list
+    @Param({ "1", "5", "12" })
+    public int apduCount;
+
+    private byte[] commandPacket;
+    private List<Apdu> responses;
+    private byte[][] responseData;
+    private ApduCodec codec;
+
+    @Setup
+    public void setup() {
+        this.commandPacket = PacketFixtures.apduDataPacket(this.apduCount);
+        this.responses = PacketFixtures.recordResponses(this.apduCount);
+        this.responseData = new byte[this.apduCount][];
+        for (int i = 0; i < this.apduCount; i++) {
+            this.responseData[i] = this.responses.get(i).getData();
+        }
+        this.codec = new ApduCodec();
+    }
+
+    @Benchmark
+    public ApduDataPacket deserializeCommands() {
+        ApduDataPacket packet = new ApduDataPacket();
+        packet.deserialize(ByteBuffer.wrap(this.commandPacket));
+        return packet;
+    }
+
+    @Benchmark
+    public byte[] serializeResponses() {
+        ApduResponseDataPacket packet = new ApduResponseDataPacket(true, PacketFixtures.OPERATION_ID, (byte) 1, this.responses);
+        return packet.serialize();
+    }
+
+    @Benchmark
+    public int decodeCommands() {
+        ApduBatch batch = this.codec.decode(this.commandPacket);
+        int length = 0;
+        for (int i = 0; i < batch.getCommandCount(); i++) {
+            length += batch.getCommandLength(i);
+        }
+        return length;
+    }
+
+    @Benchmark
+    public byte[] encodeResponses() {
+        this.codec.beginResponse((byte) 16, (byte) -17, (byte) 1, PacketFixtures.OPERATION_ID, true);
+        for (byte[] response : this.responseData) {
+            this.codec.addResponse(response);
+        }
+        return this.codec.finishResponse();
+    }
+}
@@ -0,0 +1,56 @@
+package dev.dacbiet.opusenclient.benchmarks;
+
+import dev.dacbiet.opusenclient.packets.DataPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OPUS {@link DataPacket} header, read from every server answer to decide the next action
+ * and written in front of every client packet. The SVH envelope around it is benchmarked in socksviahttp.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataPacketBenchmark {
+
+    // commands in the server answer: a small batch, a card reading batch, a large batch
+    @Param({ "1", "12", "40" })
+    public int commands;
+
+    private DataPacket packet;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() {
+        this.serialized = PacketFixtures.apduDataPacket(this.commands);
+        this.packet = new DataPacket((byte) 16, (byte) -17, (byte) 1);
+        this.packet.setLength((short) (this.serialized.length - 4));
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return this.packet.serialize();
+    }
+
+    @Benchmark
+    public byte deserialize() {
+        DataPacket resp = new DataPacket();
+        resp.deserialize(ByteBuffer.wrap(this.serialized));
+        return resp.getType();
+    }
+}
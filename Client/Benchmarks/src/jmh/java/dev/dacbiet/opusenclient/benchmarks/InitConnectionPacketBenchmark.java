@@ -0,0 +1,71 @@
+package dev.dacbiet.opusenclient.benchmarks;
+
+import dev.dacbiet.opusenclient.actions.Action;
+import dev.dacbiet.opusenclient.packets.InitConnectionPacket;
+import dev.dacbiet.opusenclient.packets.InitPacketTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The init packet, sent once with every field and once with the fields the server demands.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InitConnectionPacketBenchmark {
+
+    private static final int TYPE_COUNT = 64;
+
+    // each field alone, and all of them (-1, as sent first)
+    @Param({ "1", "2", "4", "8", "16", "32", "-1" })
+    public short type;
+
+    private byte[] atr;
+    private InitPacketTemplate template;
+
+    @Setup
+    public void setup() {
+        this.atr = PacketFixtures.atr();
+        this.template = InitPacketTemplate.forTerminal(Action.TERMINAL_NAME);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return new InitConnectionPacket((byte) 0, PacketFixtures.OPERATION_ID, this.type, Action.TERMINAL_NAME, this.atr).serialize();
+    }
+
+    /**
+     * As the init actions encode it, without the packet object and template lookup.
+     */
+    @Benchmark
+    public byte[] encodeTemplate() {
+        return this.template.encode((byte) 0, PacketFixtures.OPERATION_ID, this.type, this.atr);
+    }
+
+    /**
+     * Every combination of fields the server may demand, the average is per packet.
+     */
+    @Benchmark
+    @OperationsPerInvocation(TYPE_COUNT)
+    public void serializeEveryType(Blackhole bh) {
+        for (short type = 0; type < TYPE_COUNT; type++) {
+            bh.consume(new InitConnectionPacket((byte) 1, PacketFixtures.OPERATION_ID, type, Action.TERMINAL_NAME, this.atr).serialize());
+        }
+    }
+}
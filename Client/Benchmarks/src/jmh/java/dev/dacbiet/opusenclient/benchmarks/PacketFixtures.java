@@ -0,0 +1,77 @@
+package dev.dacbiet.opusenclient.benchmarks;
+
+import dev.dacbiet.opusenclient.packets.Apdu;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds packets shaped like the ones seen during a reload, with fixed seeds so runs compare.
+ */
+final class PacketFixtures {
+
+    static final int RECORD_SIZE = 29;
+    static final int OPERATION_ID = 123456;
+
+    private PacketFixtures() {
+    }
+
+    /**
+     * A READ RECORD command, which most of a reload is made of.
+     */
+    static byte[] readRecord(int record, int sfi) {
+        return new byte[] { -108, -78, (byte) record, (byte) ((sfi << 3) | 4), RECORD_SIZE };
+    }
+
+    /**
+     * A record answer: a few meaningful bytes, zero padding and 90 00.
+     */
+    static byte[] recordResponse(Random random) {
+        byte[] data = new byte[RECORD_SIZE + 2];
+        for (int i = 0; i < 10; i++) {
+            data[i] = (byte) random.nextInt();
+        }
+        data[RECORD_SIZE] = -112;
+        data[RECORD_SIZE + 1] = 0;
+        return data;
+    }
+
+    static List<Apdu> recordResponses(int count) {
+        Random random = new Random(count);
+        List<Apdu> responses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            responses.add(new Apdu(recordResponse(random)));
+        }
+        return responses;
+    }
+
+    /**
+     * Server packet carrying a batch of commands, as ApduDataPacket reads it.
+     */
+    static byte[] apduDataPacket(int commands) {
+        int length = 15 + commands * 6;
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.put((byte) 16);
+        buf.put((byte) -17);
+        buf.putShort((short) (length - 4));
+        buf.put((byte) 1);
+        buf.putInt(OPERATION_ID);
+        buf.put((byte) 0);
+        buf.putShort((short) 0);
+        buf.put((byte) commands);
+        for (int i = 0; i < commands; i++) {
+            byte[] command = readRecord(i % 4 + 1, 9);
+            buf.put((byte) command.length);
+            buf.put(command);
+        }
+        buf.put((byte) 0);
+        buf.put((byte) 0);
+        return buf.array();
+    }
+
+    static byte[] atr() {
+        return new byte[] { 59, 111, 0, 0, -128, 90, 10, 60, 32, 5, 16, 1, 7, 91, -51, 21, -126, -112, 0 };
+    }
+}
@@ -0,0 +1,57 @@
+package dev.dacbiet.opusenclient.benchmarks;
+
+import dev.dacbiet.opusenclient.packets.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Packet#bytesToLong(byte[])} over a batch of card ids, the average is per id.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketUtilBenchmark {
+
+    private static final int BATCH = 64;
+
+    // the 4 byte card id and the full 8 byte serial number
+    @Param({ "4", "8" })
+    public int length;
+
+    private byte[][] ids;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(this.length);
+        this.ids = new byte[BATCH][this.length];
+        for (byte[] id : this.ids) {
+            random.nextBytes(id);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long bytesToLong() {
+        long sum = 0;
+        for (byte[] id : this.ids) {
+            sum += Packet.bytesToLong(id);
+        }
+        return sum;
+    }
+}
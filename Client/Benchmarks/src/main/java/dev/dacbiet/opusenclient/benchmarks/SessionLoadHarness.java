@@ -0,0 +1,317 @@
+package dev.dacbiet.opusenclient.benchmarks;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.dacbiet.opusenclient.Client;
+import dev.dacbiet.opusenclient.ConnectionInfo;
+import dev.dacbiet.opusenclient.ReloadResult;
+import dev.dacbiet.opusenclient.SessionManager;
+import dev.dacbiet.opusenclient.nfc.CalypsoCardEmulator;
+import dev.dacbiet.opusenclient.testbed.ApduScript;
+import dev.dacbiet.opusenclient.testbed.SvhServer;
+import dev.dacbiet.opusenclient.testbed.XscpHubServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs complete client sessions against the loopback hub and SVH stand-ins of the test bed, with an emulated
+ * card, and reports tap-to-completion latency, sessions per second, threads and heap per session, and the card
+ * time per instruction of the measured sessions (see {@link dev.dacbiet.opusenclient.stats.ApduStats}) as JSON.
+ * Every session goes through the hub connection, activatechannel, the init packets, every APDU batch
+ * of the script and endtransfer.
+ * <p>
+ * The heap is sampled after a forced GC, so it only counts live objects. The collections would skew
+ * the latencies, so the heap is sampled over an extra round of sessions run after the measured ones.
+ * <p>
+ * Configured with system properties, see {@code gradle :benchmarks:sessionLoad}:
+ * <ul>
+ *     <li>{@code sessionload.sessions} measured sessions (default 200)</li>
+ *     <li>{@code sessionload.warmup} sessions run first and not measured (default 50)</li>
+ *     <li>{@code sessionload.concurrency} sessions running at once (default 16)</li>
+ *     <li>{@code sessionload.batches} APDU round trips per session (default 3)</li>
+ *     <li>{@code sessionload.svhLatencyMillis} delay of every SVH answer (default 0)</li>
+ *     <li>{@code sessionload.hubDelayMillis} delay of every hub event (default 0)</li>
+ *     <li>{@code sessionload.virtualThreads} run sessions on virtual threads, Java 21+ (default false)</li>
+ *     <li>{@code sessionload.timeoutSeconds} longest time a session may take (default 30)</li>
+ *     <li>{@code sessionload.label} free text copied to the report, e.g. the commit</li>
+ *     <li>{@code sessionload.output} report file (default build/results/sessionload/result.json)</li>
+ * </ul>
+ */
+public class SessionLoadHarness {
+
+    private static final long FIRST_SERIAL = 100000000L;
+    private static final int HEAP_ROUNDS = 4;
+
+    private final int sessions;
+    private final int warmup;
+    private final int concurrency;
+    private final int batches;
+    private final long svhLatencyMillis;
+    private final long hubDelayMillis;
+    private final boolean virtualThreads;
+    private final long timeoutSeconds;
+    private final String label;
+
+    private final AtomicInteger nextSession;
+    private final AtomicInteger failures;
+    private final AtomicLong heapPeak;
+
+    public SessionLoadHarness(int sessions, int warmup, int concurrency, int batches, long svhLatencyMillis,
+                              long hubDelayMillis, boolean virtualThreads, long timeoutSeconds, String label) {
+        if (sessions < 1 || warmup < 0 || concurrency < 1 || batches < 0) {
+            throw new IllegalArgumentException("Invalid session load configuration.");
+        }
+
+        this.sessions = sessions;
+        this.warmup = warmup;
+        this.concurrency = concurrency;
+        this.batches = batches;
+        this.svhLatencyMillis = svhLatencyMillis;
+        this.hubDelayMillis = hubDelayMillis;
+        this.virtualThreads = virtualThreads;
+        this.timeoutSeconds = timeoutSeconds;
+        this.label = label;
+        this.nextSession = new AtomicInteger();
+        this.failures = new AtomicInteger();
+        this.heapPeak = new AtomicLong();
+    }
+
+    public static void main(String[] args) throws Exception {
+        SessionLoadHarness harness = new SessionLoadHarness(
+                Integer.getInteger("sessionload.sessions", 200),
+                Integer.getInteger("sessionload.warmup", 50),
+                Integer.getInteger("sessionload.concurrency", 16),
+                Integer.getInteger("sessionload.batches", 3),
+                Long.getLong("sessionload.svhLatencyMillis", 0),
+                Long.getLong("sessionload.hubDelayMillis", 0),
+                Boolean.getBoolean("sessionload.virtualThreads"),
+                Long.getLong("sessionload.timeoutSeconds", 30),
+                System.getProperty("sessionload.label", ""));
+
+        JsonObject report = harness.run();
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+        System.out.println(json);
+
+        File output = new File(System.getProperty("sessionload.output", "build/results/sessionload/result.json"));
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        try (Writer writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(json);
+        }
+
+        // a run with failed sessions must not pass unnoticed in scripts
+        if (report.get("failures").getAsInt() > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the warmup then the measured sessions.
+     *
+     * @return the report
+     */
+    public JsonObject run() throws Exception {
+        SvhServer svh = new SvhServer(new InetSocketAddress("127.0.0.1", 0), script(this.batches));
+        svh.setLatencyMillis(this.svhLatencyMillis);
+        svh.start();
+
+        XscpHubServer hub = new XscpHubServer(new InetSocketAddress("127.0.0.1", 0), "127.0.0.1", "5000");
+        hub.setEventDelayMillis(this.hubDelayMillis);
+        hub.startAndWait(TimeUnit.SECONDS.toMillis(10));
+
+        SessionManager manager = this.virtualThreads
+                ? SessionManager.withVirtualThreads(this.concurrency)
+                : new SessionManager(this.concurrency);
+        try {
+            ConnectionInfoFactory infos = id -> new ConnectionInfo(hub.getEndpoint(), id, "", svh.getEndpoint());
+
+            this.runSessions(manager, infos, this.warmup, null, false);
+            this.failures.set(0);
+            manager.getApduStats().reset();
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            System.gc();
+            // the load workers are started with the sessions, they are not session threads
+            int baselineThreads = threads.getThreadCount() + this.concurrency;
+            long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+            threads.resetPeakThreadCount();
+            this.heapPeak.set(baselineHeap);
+
+            long[] latencies = new long[this.sessions];
+            long start = System.nanoTime();
+            this.runSessions(manager, infos, this.sessions, latencies, false);
+            long elapsed = System.nanoTime() - start;
+            int peakThreads = threads.getPeakThreadCount();
+            String apduStats = manager.getApduStats().toJson();
+
+            // failures of the heap round are not part of the report
+            int failures = this.failures.get();
+            this.runSessions(manager, infos, HEAP_ROUNDS * this.concurrency, null, true);
+            this.failures.set(failures);
+
+            JsonObject report = this.report(latencies, elapsed, peakThreads - baselineThreads,
+                    this.heapPeak.get() - baselineHeap, svh);
+            report.add("apdu", JsonParser.parseString(apduStats));
+            return report;
+        } finally {
+            manager.close();
+            hub.shutdown();
+            svh.stop();
+        }
+    }
+
+    /**
+     * Runs sessions with as many workers as the concurrency, each opening its next session once the last ended.
+     *
+     * @param latencies where to store latencies in nanoseconds, or null to not measure
+     * @param sampleHeap whether to collect garbage and sample the heap after each session
+     */
+    private void runSessions(SessionManager manager, ConnectionInfoFactory infos, int count, long[] latencies,
+                             boolean sampleHeap) throws InterruptedException {
+        AtomicInteger remaining = new AtomicInteger(count);
+        AtomicInteger index = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(this.concurrency);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < this.concurrency; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    while (remaining.getAndDecrement() > 0) {
+                        int session = this.nextSession.getAndIncrement();
+                        long latency = this.runSession(manager, infos, session);
+                        if (latencies != null) {
+                            latencies[index.getAndIncrement()] = latency;
+                        }
+                        if (sampleHeap) {
+                            System.gc();
+                            this.heapPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "session-load-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        done.await();
+    }
+
+    /**
+     * @return tap-to-completion latency in nanoseconds, -1 if the session failed
+     */
+    private long runSession(SessionManager manager, ConnectionInfoFactory infos, int session)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        Client client = manager.open(infos.create("load-" + session), new CalypsoCardEmulator(FIRST_SERIAL + session));
+        try {
+            ReloadResult result = client.getResult().get(this.timeoutSeconds, TimeUnit.SECONDS);
+            if (result.isClean()) {
+                return System.nanoTime() - start;
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                throw (InterruptedException) e;
+            }
+            client.shutdown(false);
+        }
+
+        this.failures.incrementAndGet();
+        return -1;
+    }
+
+    private JsonObject report(long[] latencies, long elapsedNanos, int extraThreads, long extraHeap, SvhServer svh) {
+        long[] measured = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+
+        JsonObject config = new JsonObject();
+        config.addProperty("sessions", this.sessions);
+        config.addProperty("warmup", this.warmup);
+        config.addProperty("concurrency", this.concurrency);
+        config.addProperty("batches", this.batches);
+        config.addProperty("svhLatencyMillis", this.svhLatencyMillis);
+        config.addProperty("hubDelayMillis", this.hubDelayMillis);
+        config.addProperty("virtualThreads", this.virtualThreads);
+
+        JsonObject latency = new JsonObject();
+        latency.addProperty("p50", millis(percentile(measured, 0.50)));
+        latency.addProperty("p99", millis(percentile(measured, 0.99)));
+        latency.addProperty("p999", millis(percentile(measured, 0.999)));
+        latency.addProperty("max", millis(measured.length == 0 ? 0 : measured[measured.length - 1]));
+        latency.addProperty("mean", millis(measured.length == 0 ? 0 : (long) Arrays.stream(measured).average().getAsDouble()));
+
+        JsonObject report = new JsonObject();
+        report.addProperty("label", this.label);
+        report.addProperty("javaVersion", System.getProperty("java.version"));
+        report.addProperty("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.add("config", config);
+        report.addProperty("failures", this.failures.get());
+        report.add("latencyMillis", latency);
+
+        double seconds = elapsedNanos / 1e9;
+        report.addProperty("elapsedSeconds", seconds);
+        report.addProperty("sessionsPerSecond", measured.length / seconds);
+        report.addProperty("sessionsPerSecondPerCore", measured.length / seconds / Runtime.getRuntime().availableProcessors());
+        // both are measured over the whole process, so they include the stand-ins
+        report.addProperty("threadsPerSession", (double) Math.max(0, extraThreads) / this.concurrency);
+        report.addProperty("heapBytesPerSession", Math.max(0, extraHeap) / this.concurrency);
+        report.addProperty("svhRequestsPerSession", (double) svh.getRequestCount() / this.nextSession.get());
+        return report;
+    }
+
+    /**
+     * Builds a script with the given number of APDU batches, repeating the card reading batches.
+     */
+    private static ApduScript script(int batches) {
+        ApduScript reading = ApduScript.cardReading();
+        List<List<byte[]>> script = new ArrayList<>();
+        for (int i = 0; i < batches; i++) {
+            script.add(reading.getBatch(i % reading.size()));
+        }
+        return new ApduScript(reading.getDemandType(), script);
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private interface ConnectionInfoFactory {
+        ConnectionInfo create(String sessionId);
+    }
+}
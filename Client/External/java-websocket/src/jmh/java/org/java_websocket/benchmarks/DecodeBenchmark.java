@@ -0,0 +1,128 @@
+package org.java_websocket.benchmarks;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocket.Role;
+import org.java_websocket.WebSocketAdapter;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.handshake.Handshakedata;
+import org.java_websocket.util.Charsetfunctions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The read path of an open connection: {@link WebSocketImpl#decode(ByteBuffer)} unframes, decodes the
+ * utf-8 text and hands it to the listener. Also {@link Charsetfunctions#stringUtf8(ByteBuffer)} alone.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class DecodeBenchmark {
+
+	private static final String HANDSHAKE = "GET /signalr/connect HTTP/1.1\r\n"
+			+ "Host: 127.0.0.1\r\n"
+			+ "Upgrade: websocket\r\n"
+			+ "Connection: Upgrade\r\n"
+			+ "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+			+ "Sec-WebSocket-Version: 13\r\n\r\n";
+
+	@Param( { "100", "400", "4096", "70000" } )
+	public int payloadSize;
+
+	private WebSocketImpl socket;
+	private byte[] frame;
+	private byte[] utf8;
+	private Blackhole blackhole;
+
+	@Setup
+	public void setup( Blackhole bh ) {
+		String text = Frames.text( payloadSize );
+		blackhole = bh;
+		frame = Frames.frame( text, Role.CLIENT );
+		utf8 = Frames.utf8( text );
+
+		socket = new WebSocketImpl( new Listener(), Collections.<Draft>singletonList( new Draft_17() ) );
+		socket.decode( ByteBuffer.wrap( Charsetfunctions.asciiBytes( HANDSHAKE ) ) );
+		if( !socket.isOpen() )
+			throw new IllegalStateException( "handshake failed" );
+		socket.outQueue.clear();
+	}
+
+	@Benchmark
+	public void decode() {
+		socket.decode( ByteBuffer.wrap( frame ) );
+	}
+
+	@Benchmark
+	public String stringUtf8() throws InvalidDataException {
+		return Charsetfunctions.stringUtf8( ByteBuffer.wrap( utf8 ) );
+	}
+
+	private class Listener extends WebSocketAdapter {
+
+		@Override
+		public void onWebsocketMessage( WebSocket conn, String message ) {
+			blackhole.consume( message );
+		}
+
+		@Override
+		public void onWebsocketMessage( WebSocket conn, ByteBuffer blob ) {
+			blackhole.consume( blob );
+		}
+
+		@Override
+		public void onWebsocketOpen( WebSocket conn, Handshakedata d ) {
+		}
+
+		@Override
+		public void onWebsocketClose( WebSocket ws, int code, String reason, boolean remote ) {
+		}
+
+		@Override
+		public void onWebsocketClosing( WebSocket ws, int code, String reason, boolean remote ) {
+		}
+
+		@Override
+		public void onWebsocketCloseInitiated( WebSocket ws, int code, String reason ) {
+		}
+
+		@Override
+		public void onWebsocketError( WebSocket conn, Exception ex ) {
+			throw new IllegalStateException( ex );
+		}
+
+		@Override
+		public void onWriteDemand( WebSocket conn ) {
+		}
+
+		@Override
+		public InetSocketAddress getLocalSocketAddress( WebSocket conn ) {
+			return null;
+		}
+
+		@Override
+		public InetSocketAddress getRemoteSocketAddress( WebSocket conn ) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.java_websocket.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.WebSocket.Role;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_10;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.Framedata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Framing and unframing done by {@link Draft_10} for every hub message.
+ * Sizes cover the three length encodings: 7 bit, 16 bit and 64 bit.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class DraftFramingBenchmark {
+
+	@Param( { "100", "400", "4096", "70000" } )
+	public int payloadSize;
+
+	private Draft clientDraft;
+	private Framedata outgoing;
+	private Draft_10 readDraft;
+	private byte[] incoming;
+	private int split;
+
+	@Setup
+	public void setup() {
+		String text = Frames.text( payloadSize );
+		clientDraft = Frames.draft( Role.CLIENT );
+		outgoing = clientDraft.createFrames( text, true ).get( 0 );
+		readDraft = (Draft_10) Frames.draft( Role.CLIENT );
+		// the hub sends unmasked frames
+		incoming = Frames.frame( text, Role.SERVER );
+		split = incoming.length / 2;
+	}
+
+	/**
+	 * Client side framing, which masks the payload byte per byte.
+	 */
+	@Benchmark
+	public ByteBuffer createBinaryFrame() {
+		ByteBuffer payload = outgoing.getPayloadData();
+		ByteBuffer frame = clientDraft.createBinaryFrame( outgoing );
+		payload.rewind();
+		return frame;
+	}
+
+	@Benchmark
+	public List<Framedata> translateFrame() throws InvalidDataException {
+		return readDraft.translateFrame( ByteBuffer.wrap( incoming ) );
+	}
+
+	/**
+	 * A frame arriving in two reads: the first ends in an incomplete frame which the second completes.
+	 */
+	@Benchmark
+	public void translateSplitFrame( Blackhole bh ) throws InvalidDataException {
+		bh.consume( readDraft.translateFrame( ByteBuffer.wrap( incoming, 0, split ) ) );
+		bh.consume( readDraft.translateFrame( ByteBuffer.wrap( incoming, split, incoming.length - split ) ) );
+	}
+
+	@Benchmark
+	public Object translateSingleFrame() throws InvalidDataException {
+		try {
+			return readDraft.translateSingleFrame( ByteBuffer.wrap( incoming ) );
+		} catch ( Throwable e ) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	/**
+	 * A truncated frame, which costs an incomplete frame exception.
+	 */
+	@Benchmark
+	public Object translateSingleFrameIncomplete() {
+		try {
+			return readDraft.translateSingleFrame( ByteBuffer.wrap( incoming, 0, split ) );
+		} catch ( Throwable e ) {
+			return e;
+		}
+	}
+}
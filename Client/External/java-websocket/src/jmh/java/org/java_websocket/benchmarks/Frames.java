@@ -0,0 +1,61 @@
+package org.java_websocket.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.java_websocket.WebSocket.Role;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.util.Charsetfunctions;
+
+/**
+ * Frames shaped like the hub traffic: SignalR json text messages.
+ */
+final class Frames {
+
+	private static final String HUB_MESSAGE = "{\"C\":\"d-5B1F2A,0|E,1\",\"M\":[{\"H\":\"xscphub\",\"M\":\"activatechannel\",\"A\":[\"123456\",\"10.0.0.1\",\"5000\"]}]}";
+
+	private Frames() {
+	}
+
+	/**
+	 * @return json text of about the given size, made of hub messages
+	 */
+	static String text( int size ) {
+		StringBuilder builder = new StringBuilder( size + HUB_MESSAGE.length() );
+		builder.append( '[' );
+		while ( builder.length() + HUB_MESSAGE.length() + 1 < size ) {
+			if( builder.length() > 1 )
+				builder.append( ',' );
+			builder.append( HUB_MESSAGE );
+		}
+		while ( builder.length() < size - 1 ) {
+			builder.append( ' ' );
+		}
+		builder.append( ']' );
+		return builder.toString();
+	}
+
+	static Draft draft( Role role ) {
+		Draft draft = new Draft_17();
+		draft.setParseMode( role );
+		return draft;
+	}
+
+	/**
+	 * @return the text framed the way the given side sends it, masked when sent by a client
+	 */
+	static byte[] frame( String text, Role role ) {
+		Draft draft = draft( role );
+		List<Framedata> frames = draft.createFrames( text, role == Role.CLIENT );
+		ByteBuffer buf = draft.createBinaryFrame( frames.get( 0 ) );
+		byte[] out = new byte[ buf.remaining() ];
+		buf.get( out );
+		return out;
+	}
+
+	static byte[] utf8( String text ) {
+		return Charsetfunctions.utf8Bytes( text );
+	}
+}
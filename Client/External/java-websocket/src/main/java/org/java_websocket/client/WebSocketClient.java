@@ -14,6 +14,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
 
 import org.java_websocket.SocketChannelIOHelper;
 import org.java_websocket.WebSocket;
@@ -43,6 +44,8 @@ import org.java_websocket.handshake.ServerHandshake;
  */
 public abstract class WebSocketClient extends WebSocketAdapter implements Runnable {
 
+	private static volatile ThreadFactory threadFactory = null;
+
 	/**
 	 * The URI this channel is supposed to connect to.
 	 */
@@ -101,6 +104,27 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 		this.conn = new WebSocketImpl(this, draft);
 	}
 
+	/**
+	 * Sets the factory used to create the read and write threads of clients
+	 * connected afterwards, e.g. to run them on virtual threads.
+	 * <var>null</var> restores plain platform threads.
+	 */
+	public static void setThreadFactory( ThreadFactory factory ) {
+		threadFactory = factory;
+	}
+
+	/**
+	 * @return the factory set with {@link #setThreadFactory(ThreadFactory)}, <var>null</var> for platform threads
+	 */
+	public static ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	private static Thread newThread( Runnable runnable ) {
+		ThreadFactory factory = threadFactory;
+		return factory != null ? factory.newThread( runnable ) : new Thread( runnable );
+	}
+
 	/**
 	 * Gets the URI that this WebSocketClient is connected to.
 	 * 
@@ -123,7 +147,7 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 	public void connect() {
 		if( writethread != null )
 			throw new IllegalStateException( "WebSocketClient objects are not reuseable" );
-		writethread = new Thread( this );
+		writethread = newThread( this );
 		writethread.start();
 	}
 
@@ -187,7 +211,7 @@ public abstract class WebSocketClient extends WebSocketAdapter implements Runnab
 			this.conn.closeConnection(-1, e.getMessage());
 			return;
 		}
-		(this.writethread = new Thread(new WebsocketWriteThread())).start();
+		(this.writethread = newThread(new WebsocketWriteThread())).start();
 		final byte[] rawbuffer = new byte[WebSocketImpl.RCVBUF];
 		try {
 			int readBytes;
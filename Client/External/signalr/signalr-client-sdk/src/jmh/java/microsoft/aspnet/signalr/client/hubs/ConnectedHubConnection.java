@@ -0,0 +1,80 @@
+package microsoft.aspnet.signalr.client.hubs;
+
+import java.lang.reflect.Field;
+
+import microsoft.aspnet.signalr.client.Connection;
+import microsoft.aspnet.signalr.client.ConnectionBase;
+import microsoft.aspnet.signalr.client.ConnectionState;
+import microsoft.aspnet.signalr.client.LogLevel;
+import microsoft.aspnet.signalr.client.Logger;
+import microsoft.aspnet.signalr.client.SignalRFuture;
+import microsoft.aspnet.signalr.client.transport.ClientTransport;
+import microsoft.aspnet.signalr.client.transport.ConnectionType;
+import microsoft.aspnet.signalr.client.transport.DataResultCallback;
+import microsoft.aspnet.signalr.client.transport.NegotiationResponse;
+
+/**
+ * Hub connection that can be connected without a server, sends go to a transport that drops them.
+ */
+class ConnectedHubConnection extends HubConnection {
+
+    private static final Logger NO_LOGGER = new Logger() {
+        @Override
+        public void log(String message, LogLevel level) {
+        }
+    };
+
+    ConnectedHubConnection() {
+        super("http://127.0.0.1", "", true, NO_LOGGER);
+
+        try {
+            Field transport = Connection.class.getDeclaredField("mTransport");
+            transport.setAccessible(true);
+            transport.set(this, new DroppingTransport());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Marks the connection connected, hub proxies must be created before.
+     */
+    void connect() {
+        mState = ConnectionState.Connected;
+    }
+
+    private static class DroppingTransport implements ClientTransport {
+
+        @Override
+        public String getName() {
+            return "dropping";
+        }
+
+        @Override
+        public boolean supportKeepAlive() {
+            return false;
+        }
+
+        @Override
+        public SignalRFuture<NegotiationResponse> negotiate(ConnectionBase connection) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SignalRFuture<Void> start(ConnectionBase connection, ConnectionType connectionType, DataResultCallback callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SignalRFuture<Void> send(ConnectionBase connection, String data, DataResultCallback callback) {
+            SignalRFuture<Void> future = new SignalRFuture<Void>();
+            future.setResult(null);
+            return future;
+        }
+
+        @Override
+        public SignalRFuture<Void> abort(ConnectionBase connection) {
+            return new SignalRFuture<Void>();
+        }
+    }
+}
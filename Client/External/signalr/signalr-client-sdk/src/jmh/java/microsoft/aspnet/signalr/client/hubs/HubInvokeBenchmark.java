@@ -0,0 +1,71 @@
+package microsoft.aspnet.signalr.client.hubs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+
+import microsoft.aspnet.signalr.client.SignalRFuture;
+import microsoft.aspnet.signalr.client.transport.TransportHelper;
+
+/**
+ * Invoking a hub method: serializing the invocation and handing it to the transport,
+ * then receiving its {@link HubResult}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HubInvokeBenchmark {
+
+    private ConnectedHubConnection mConnection;
+    private HubProxy mProxy;
+    private String mResultMessage;
+    private JsonElement mResult;
+
+    @Setup
+    public void setup() {
+        mConnection = new ConnectedHubConnection();
+        mProxy = mConnection.createHubProxy("xscphub");
+        mConnection.connect();
+
+        mResultMessage = "{\"I\":\"7\"}";
+        mResult = mConnection.getJsonParser().parse(mResultMessage);
+    }
+
+    /**
+     * An invocation answering an event, serialized and handed to the transport.
+     */
+    @Benchmark
+    public SignalRFuture<Void> invoke() {
+        SignalRFuture<Void> future = mProxy.invoke("endGetCardSerialNumberWithID", "0a1b2c3d4e5f", "1234567890");
+        // no server answers, drop the callback so they do not pile up
+        future.cancel();
+        return future;
+    }
+
+    /**
+     * An invocation result through every receive stage.
+     */
+    @Benchmark
+    public Object processReceivedResult() {
+        return TransportHelper.processReceivedData(mResultMessage, mConnection);
+    }
+
+    @Benchmark
+    public void onReceivedResult() {
+        mConnection.onReceived(mResult);
+    }
+}
@@ -0,0 +1,116 @@
+package microsoft.aspnet.signalr.client.hubs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import microsoft.aspnet.signalr.client.transport.TransportHelper;
+
+/**
+ * The stages a pushed hub event goes through, with the xscphub events the OPUS client handles:
+ * parsing the transport message, reading it into a {@link HubInvocation} and binding the event
+ * arguments by reflection. Invocations are covered by {@link HubInvokeBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HubPipelineBenchmark {
+
+    @Param({ "detectCard", "GetCardSerialNumberWithID", "activatechannel" })
+    public String event;
+
+    private ConnectedHubConnection mConnection;
+    private HubProxy mProxy;
+    private String mEventMessage;
+    private JsonElement mEventInvocation;
+    private JsonElement[] mEventArgs;
+
+    @Setup
+    public void setup(final Blackhole bh) {
+        mConnection = new ConnectedHubConnection();
+        mProxy = mConnection.createHubProxy("xscphub");
+
+        // the same handler shapes the client registers
+        mProxy.on("detectCard", new SubscriptionHandler() {
+            @Override
+            public void run() {
+                bh.consume(this);
+            }
+        });
+        mProxy.on("GetCardSerialNumberWithID", new SubscriptionHandler1<String>() {
+            @Override
+            public void run(String cmd) {
+                bh.consume(cmd);
+            }
+        }, String.class);
+        mProxy.on("activatechannel", new SubscriptionHandler3<String, String, String>() {
+            @Override
+            public void run(String opId, String address, String port) {
+                bh.consume(opId);
+                bh.consume(address);
+                bh.consume(port);
+            }
+        }, String.class, String.class, String.class);
+        mConnection.connect();
+
+        String args;
+        if ("activatechannel".equals(event)) {
+            args = "[\"123456\",\"10.0.0.1\",\"5000\"]";
+        } else if ("GetCardSerialNumberWithID".equals(event)) {
+            args = "[\"1\"]";
+        } else {
+            args = "[]";
+        }
+
+        String invocation = "{\"H\":\"xscphub\",\"M\":\"" + event + "\",\"A\":" + args + "}";
+        mEventMessage = "{\"C\":\"d-5B1F2A,0|E,1\",\"M\":[" + invocation + "]}";
+        mEventInvocation = mConnection.getJsonParser().parse(invocation);
+        mEventArgs = mConnection.getGson().fromJson(mEventInvocation, HubInvocation.class).getArgs();
+    }
+
+    /**
+     * The json tree parse alone.
+     */
+    @Benchmark
+    public JsonObject parse() {
+        return mConnection.getJsonParser().parse(mEventMessage).getAsJsonObject();
+    }
+
+    /**
+     * A pushed event through every receive stage, from the raw text to the handler.
+     */
+    @Benchmark
+    public Object processReceivedEvent() {
+        return TransportHelper.processReceivedData(mEventMessage, mConnection);
+    }
+
+    @Benchmark
+    public void onReceivedEvent() {
+        mConnection.onReceived(mEventInvocation);
+    }
+
+    /**
+     * Argument binding, by reflection and Gson, and the handler call.
+     */
+    @Benchmark
+    public void invokeEvent() throws Exception {
+        mProxy.invokeEvent(event, mEventArgs);
+    }
+}
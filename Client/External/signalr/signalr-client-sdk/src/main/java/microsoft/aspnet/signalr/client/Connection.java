@@ -9,6 +9,7 @@ package microsoft.aspnet.signalr.client;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -31,6 +32,14 @@ public class Connection implements ConnectionBase {
 
     public static final Version PROTOCOL_VERSION = new Version("1.3");
 
+    /**
+     * Gson and JsonParser are thread-safe, so every connection shares the
+     * same instances unless a custom Gson is set
+     */
+    private static final Gson DEFAULT_GSON = new GsonBuilder().registerTypeAdapter(Date.class, new DateSerializer()).create();
+
+    private static final JsonParser DEFAULT_JSON_PARSER = new JsonParser();
+
     private Logger mLogger;
 
     private String mUrl;
@@ -77,6 +86,8 @@ public class Connection implements ConnectionBase {
 
     private KeepAliveData mKeepAliveData;
 
+    private ScheduledExecutorService mHeartbeatExecutor;
+
     protected ConnectionState mState;
 
     protected JsonParser mJsonParser;
@@ -150,11 +161,8 @@ public class Connection implements ConnectionBase {
         mUrl = url;
         mQueryString = queryString;
         mLogger = logger;
-        mJsonParser = new JsonParser();
-
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.registerTypeAdapter(Date.class, new DateSerializer());
-        mGson = gsonBuilder.create();
+        mJsonParser = DEFAULT_JSON_PARSER;
+        mGson = DEFAULT_GSON;
         mState = ConnectionState.Disconnected;
     }
 
@@ -566,6 +574,18 @@ public class Connection implements ConnectionBase {
         return mJsonParser;
     }
 
+    /**
+     * Sets the scheduler used by the heartbeat monitor. Connections sharing a
+     * scheduler do not need a thread each for their keep-alive checks.
+     * 
+     * @param executor
+     *            The scheduler to use, or null to create one per transport
+     *            start
+     */
+    public void setHeartbeatExecutor(ScheduledExecutorService executor) {
+        mHeartbeatExecutor = executor;
+    }
+
     /**
      * Triggers the Reconnecting event
      */
@@ -643,7 +663,7 @@ public class Connection implements ConnectionBase {
                 onReconnecting();
             }
 
-            mHeartbeatMonitor = new HeartbeatMonitor();
+            mHeartbeatMonitor = new HeartbeatMonitor(mHeartbeatExecutor);
 
             mHeartbeatMonitor.setOnWarning(new Runnable() {
 
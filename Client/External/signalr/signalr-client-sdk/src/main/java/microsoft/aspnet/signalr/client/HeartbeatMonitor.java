@@ -7,6 +7,8 @@ See License.txt in the project root for license information.
 package microsoft.aspnet.signalr.client;
 
 import java.util.Calendar;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -22,6 +24,10 @@ public class HeartbeatMonitor {
 
     private ScheduledThreadPoolExecutor mExecutor;
 
+    private ScheduledExecutorService mSharedExecutor;
+
+    private ScheduledFuture<?> mCheckTask;
+
     private boolean mTimedOut = false;
 
     private boolean mHasBeenWarned = false;
@@ -30,6 +36,24 @@ public class HeartbeatMonitor {
 
     private Object mSync = new Object();
 
+    /**
+     * Initializes the monitor with its own scheduler thread
+     */
+    public HeartbeatMonitor() {
+        this(null);
+    }
+
+    /**
+     * Initializes the monitor
+     * 
+     * @param sharedExecutor
+     *            Scheduler to run the checks on. It is not shut down when the
+     *            monitor stops. If null, the monitor creates its own.
+     */
+    public HeartbeatMonitor(ScheduledExecutorService sharedExecutor) {
+        mSharedExecutor = sharedExecutor;
+    }
+
     /**
      * Starts the monitor
      * 
@@ -56,8 +80,13 @@ public class HeartbeatMonitor {
 
             long interval = mKeepAliveData.getCheckInterval();
 
-            mExecutor = new ScheduledThreadPoolExecutor(1);
-            mExecutor.scheduleAtFixedRate(new Runnable() {
+            ScheduledExecutorService executor = mSharedExecutor;
+            if (executor == null) {
+                mExecutor = new ScheduledThreadPoolExecutor(1);
+                executor = mExecutor;
+            }
+
+            mCheckTask = executor.scheduleAtFixedRate(new Runnable() {
 
                 @Override
                 public void run() {
@@ -99,6 +128,11 @@ public class HeartbeatMonitor {
         if (!mStopped) {
             synchronized (mSync) {
                 mStopped = true;
+                if (mCheckTask != null) {
+                    mCheckTask.cancel(false);
+                    mCheckTask = null;
+                }
+
                 if (mExecutor != null) {
                     mExecutor.shutdown();
                     mExecutor = null;
@@ -6,6 +6,8 @@ See License.txt in the project root for license information.
 
 package microsoft.aspnet.signalr.client.http.java;
 
+import java.util.concurrent.Executor;
+
 import microsoft.aspnet.signalr.client.*;
 import microsoft.aspnet.signalr.client.http.*;
 import microsoft.aspnet.signalr.client.http.HttpConnectionFuture.ResponseCallback;
@@ -23,6 +25,8 @@ public class JavaHttpConnection implements HttpConnection {
 
     private Logger mLogger;
 
+    private Executor mExecutor;
+
     /**
      * Initializes the JavaHttpConnection
      * 
@@ -30,7 +34,21 @@ public class JavaHttpConnection implements HttpConnection {
      *            logger to log activity
      */
     public JavaHttpConnection(Logger logger) {
+        this(logger, null);
+    }
+
+    /**
+     * Initializes the JavaHttpConnection
+     * 
+     * @param logger
+     *            logger to log activity
+     * @param executor
+     *            executor to run the requests on, or null to start a new
+     *            thread per request
+     */
+    public JavaHttpConnection(Logger logger, Executor executor) {
         mLogger = logger;
+        mExecutor = executor;
     }
 
     @Override
@@ -38,11 +56,28 @@ public class JavaHttpConnection implements HttpConnection {
 
         request.addHeader(USER_AGENT_HEADER, Platform.getUserAgent());
 
-        mLogger.log("Create new thread for HTTP Connection", LogLevel.Verbose);
-
         HttpConnectionFuture future = new HttpConnectionFuture();
 
         final NetworkRunnable target = new NetworkRunnable(mLogger, request, future, callback);
+
+        if (mExecutor != null) {
+            mLogger.log("Execute HTTP Connection on shared executor", LogLevel.Verbose);
+
+            future.onCancelled(new Runnable() {
+
+                @Override
+                public void run() {
+                    target.closeStreamAndConnection();
+                }
+            });
+
+            mExecutor.execute(target);
+
+            return future;
+        }
+
+        mLogger.log("Create new thread for HTTP Connection", LogLevel.Verbose);
+
         final NetworkThread networkThread = new NetworkThread(target) {
             @Override
             void releaseAndStop() {
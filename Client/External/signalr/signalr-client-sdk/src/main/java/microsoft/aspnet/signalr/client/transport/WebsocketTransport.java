@@ -154,10 +154,13 @@ public class WebsocketTransport extends HttpClientTransport {
                 }
             }
         };
-        try {
-            this.mWebSocketClient.setSocket(HttpsURLConnection.getDefaultSSLSocketFactory().createSocket());
-        } catch (IOException e) {
-            e.printStackTrace();
+        // plain ws:// endpoints (such as a local hub) connect without TLS
+        if ("wss".equalsIgnoreCase(uri.getScheme())) {
+            try {
+                this.mWebSocketClient.setSocket(HttpsURLConnection.getDefaultSSLSocketFactory().createSocket());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
         mWebSocketClient.connect();
 
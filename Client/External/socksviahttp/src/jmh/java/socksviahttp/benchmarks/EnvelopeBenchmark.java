@@ -0,0 +1,117 @@
+package socksviahttp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import socksviahttp.core.net.DataPacket;
+import socksviahttp.core.net.SVHConnection;
+import socksviahttp.core.util.ByteUtils;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * What wrapping an APDU batch in an SVH data packet costs, stage by stage.
+ * {@link #copyPayload()} is the cost of the payload alone to compare the envelope against.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvelopeBenchmark {
+
+    private static final int RECORD_SIZE = 29;
+
+    // a command batch, 5 and 12 record answers, and a large batch
+    @Param({ "45", "175", "400", "1500" })
+    public int payloadSize;
+
+    private byte[] payload;
+    private byte[] packed;
+    private DataPacket packet;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        this.payload = payload(this.payloadSize);
+        this.packed = ByteUtils.packRaw(this.payload);
+
+        this.packet = new DataPacket();
+        this.packet.type = 31;
+        this.packet.id = "C123456";
+        this.packet.tab = this.payload;
+        this.packet.encryptData = true;
+        this.packet.zipData = true;
+        this.packet.encryptionKey = SVHConnection.ENCRYPT_KEY;
+        this.serialized = this.packet.saveToByteArray();
+    }
+
+    @Benchmark
+    public byte[] copyPayload() {
+        return this.payload.clone();
+    }
+
+    @Benchmark
+    public byte[] packRaw() throws IOException {
+        return ByteUtils.packRaw(this.payload);
+    }
+
+    @Benchmark
+    public byte[] unpackRaw() throws IOException {
+        return ByteUtils.unpackRaw(this.packed);
+    }
+
+    @Benchmark
+    public byte[] encryptRaw() throws IOException {
+        return ByteUtils.encryptRaw(SVHConnection.ENCRYPT_KEY, this.packed);
+    }
+
+    @Benchmark
+    public long crc32() {
+        CRC32 crc = new CRC32();
+        crc.update(this.payload);
+        return crc.getValue();
+    }
+
+    @Benchmark
+    public byte[] saveToByteArray() {
+        return this.packet.saveToByteArray();
+    }
+
+    @Benchmark
+    public byte[] loadFromByteArray() {
+        DataPacket resp = new DataPacket();
+        resp.encryptionKey = SVHConnection.ENCRYPT_KEY;
+        resp.loadFromByteArray(this.serialized);
+        return resp.tab;
+    }
+
+    /**
+     * Record answers: a few meaningful bytes, zero padding and 90 00, which gzip like real traffic.
+     */
+    static byte[] payload(int size) {
+        Random random = new Random(size);
+        byte[] out = new byte[size];
+        for (int i = 0; i < size; i += RECORD_SIZE + 2) {
+            for (int j = i; j < Math.min(i + 10, size); j++) {
+                out[j] = (byte) random.nextInt();
+            }
+            if (i + RECORD_SIZE + 1 < size) {
+                out[i + RECORD_SIZE] = -112;
+            }
+        }
+        return out;
+    }
+}
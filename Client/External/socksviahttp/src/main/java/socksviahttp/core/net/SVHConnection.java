@@ -3,10 +3,10 @@ package socksviahttp.core.net;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import javax.net.ssl.HttpsURLConnection;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.BufferUnderflowException;
 import java.util.Arrays;
@@ -15,6 +15,8 @@ public class SVHConnection {
     private static final Logger logger = LoggerFactory.getLogger(SVHConnection.class);
     static final long TIMEOUT = 180;
     static final String INIT_ID = "USER1:PASS1:" + TIMEOUT;
+    // the prefetch shares its executor with hub negotiate, a hung servlet must not hold it
+    static final int ROUTE_TIMEOUT_MS = 10000;
     public static final byte[] ENCRYPT_KEY = "MY_SOCKS_VIA_HTTP_SECRET_ENCRYPTION_KEY".getBytes();
 
     private final String endpoint;
@@ -25,8 +27,18 @@ public class SVHConnection {
     private final String port;
 
     public SVHConnection(String endpoint, String address, String port) {
+        this(endpoint, address, port, null);
+    }
+
+    /**
+     * @param endpoint servlet endpoint
+     * @param address address of the server to relay to
+     * @param port port of the server to relay to
+     * @param route ROUTEID cookie fetched ahead of time (see {@link #fetchRoute(String)}), or null
+     */
+    public SVHConnection(String endpoint, String address, String port, String route) {
         this.endpoint = endpoint;
-        this.route = null;
+        this.route = route;
         this.ready = false;
         this.connId = "";
         this.address = address;
@@ -75,6 +87,49 @@ public class SVHConnection {
         return true;
     }
 
+    /**
+     * Requests the servlet endpoint once to get its ROUTEID cookie.
+     * Meant to be called before the connection is needed: the TLS session it opens is kept alive and reused
+     * by the following posts to the same endpoint.
+     *
+     * @param endpoint servlet endpoint
+     * @return the cookie or null if the server did not send one
+     */
+    public static String fetchRoute(String endpoint) {
+        try {
+            HttpURLConnection con = (HttpURLConnection) new URL(endpoint).openConnection();
+            con.setConnectTimeout(ROUTE_TIMEOUT_MS);
+            con.setReadTimeout(ROUTE_TIMEOUT_MS);
+            String route = readRoute(con);
+            // drain the body so the connection goes back to the keep-alive cache
+            try (InputStream is = con.getResponseCode() < 400 ? con.getInputStream() : con.getErrorStream()) {
+                if (is != null) {
+                    IOUtils.toByteArray(is);
+                }
+            }
+
+            if (route != null) {
+                logger.info("Servlet cookie found: {}", route);
+            }
+            return route;
+        } catch (IOException e) {
+            logger.warn("Unable to prefetch servlet cookie.", e);
+            return null;
+        }
+    }
+
+    private static String readRoute(HttpURLConnection con) {
+        String val = con.getHeaderField("Set-Cookie");
+        if (val != null && val.contains("ROUTEID")) {
+            return val;
+        }
+        return null;
+    }
+
+    public String getRoute() {
+        return this.route;
+    }
+
     public String getConnId() {
         return this.connId;
     }
@@ -114,55 +169,54 @@ public class SVHConnection {
         try {
             URL url = new URL(this.endpoint);
 
-            if (this.route == null) {
-                HttpsURLConnection cookieCon = (HttpsURLConnection) url.openConnection();
-
-                try {
-                    String val = cookieCon.getHeaderField("Set-Cookie");
-                    if (val != null && val.contains("ROUTEID")) {
-                        this.route = val;
-                        logger.info("Servlet cookie found: {}", val);
-                    } else {
-                        logger.error("Could not get servlet cookie!");
-                    }
-                } finally {
-                    cookieCon.disconnect();
-                }
-            }
-
-
             // now perform the request
 //            System.out.println("LL - " + Arrays.toString(data)); // best debugging
-            HttpsURLConnection con = (HttpsURLConnection) url.openConnection();
+            HttpURLConnection con = (HttpURLConnection) url.openConnection();
             con.setDoInput(true);
             con.setDoOutput(true);
             con.setUseCaches(false);
             con.setRequestProperty("Content-Type", "application/octet-stream");
             con.setRequestProperty("Content-Length", String.valueOf(data.length));
-            con.setRequestProperty("Cookie", this.route);
+            if (this.route != null) {
+                con.setRequestProperty("Cookie", this.route);
+            }
 
             try(OutputStream out = con.getOutputStream()) {
                 out.write(data);
                 out.flush();
+            }
 
-                int respCode = con.getResponseCode();
-                if (respCode != 200) {
-                    InputStream eis = con.getErrorStream();
-                    byte[] eData = IOUtils.toByteArray(eis);
-
-                    String errorMsg = Arrays.toString(eData);
-                    try {
-                        errorMsg = new String(eData);
-                    } catch (Exception ignored) {}
+            // without a prefetched cookie, stick to the server that answered the first request
+            if (this.route == null) {
+                this.route = readRoute(con);
+                if (this.route != null) {
+                    logger.info("Servlet cookie found: {}", this.route);
+                } else {
+                    logger.error("Could not get servlet cookie!");
+                }
+            }
 
-                    logger.error("Connection response code was not 200! ({}): {}", respCode, errorMsg);
-                    return null;
+            // streams are closed rather than disconnected so the connection is kept alive
+            int respCode = con.getResponseCode();
+            if (respCode != 200) {
+                byte[] eData = new byte[0];
+                try (InputStream eis = con.getErrorStream()) {
+                    if (eis != null) {
+                        eData = IOUtils.toByteArray(eis);
+                    }
                 }
 
-                InputStream is = con.getInputStream();
+                String errorMsg = Arrays.toString(eData);
+                try {
+                    errorMsg = new String(eData);
+                } catch (Exception ignored) {}
+
+                logger.error("Connection response code was not 200! ({}): {}", respCode, errorMsg);
+                return null;
+            }
+
+            try (InputStream is = con.getInputStream()) {
                 return IOUtils.toByteArray(is);
-            } finally {
-                con.disconnect();
             }
 
         } catch (IOException e) {
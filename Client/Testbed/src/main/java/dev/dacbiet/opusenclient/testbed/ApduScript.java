@@ -0,0 +1,83 @@
+package dev.dacbiet.opusenclient.testbed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What the stand-in OPUS server asks of a client once connected: the init fields it demands after the
+ * first init packet, then batches of APDU commands, each batch sent in one packet.
+ */
+public class ApduScript {
+
+    /** Every init field: operation id, ATR, terminal, reader, OS and XSCP version. */
+    public static final int DEMAND_ALL = 63;
+
+    private final int demandType;
+    private final List<List<byte[]>> batches;
+
+    /**
+     * @param demandType init fields demanded after the first init packet
+     * @param batches batches of commands, sent in order
+     */
+    public ApduScript(int demandType, List<List<byte[]>> batches) {
+        this.demandType = demandType;
+        List<List<byte[]>> copy = new ArrayList<>();
+        for (List<byte[]> batch : batches) {
+            copy.add(Collections.unmodifiableList(new ArrayList<>(batch)));
+        }
+        this.batches = Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Reads the card like a reload does before anything is written: selects the application, then reads
+     * the environment, contracts, counters and events, in three round trips.
+     *
+     * @return the script
+     */
+    public static ApduScript cardReading() {
+        return new ApduScript(DEMAND_ALL, Arrays.asList(
+                Arrays.asList(
+                        hex("00A4040008315449432E494341"),
+                        hex("94B2013C1D")),
+                Arrays.asList(
+                        hex("94B2014C1D"),
+                        hex("94B2024C1D"),
+                        hex("94B2034C1D"),
+                        hex("94B2044C1D"),
+                        hex("94B201CC1D")),
+                Arrays.asList(
+                        hex("94B201441D"),
+                        hex("94B202441D"),
+                        hex("94B203441D"))));
+    }
+
+    public int getDemandType() {
+        return this.demandType;
+    }
+
+    public int size() {
+        return this.batches.size();
+    }
+
+    public List<byte[]> getBatch(int index) {
+        return this.batches.get(index);
+    }
+
+    /**
+     * @param hex hex string, without separators
+     * @return bytes
+     */
+    public static byte[] hex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd hex length: " + hex);
+        }
+
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return out;
+    }
+}
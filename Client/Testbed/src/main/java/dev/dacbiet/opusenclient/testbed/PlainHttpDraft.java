@@ -0,0 +1,89 @@
+package dev.dacbiet.opusenclient.testbed;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.exceptions.InvalidHandshakeException;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.HandshakeBuilder;
+import org.java_websocket.handshake.Handshakedata;
+import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
+import org.java_websocket.util.Charsetfunctions;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * WebSocket draft that also accepts plain HTTP requests, so SignalR's negotiate request can be served on the
+ * same port as its WebSocket connection.
+ * A plain request is answered with the status, headers and content the server puts in the handshake response,
+ * the server then closes the connection.
+ */
+public class PlainHttpDraft extends Draft_17 {
+
+    private boolean plainHttp;
+
+    /**
+     * @param request request received
+     * @return whether the request is plain HTTP rather than a WebSocket upgrade
+     */
+    public static boolean isPlainHttp(Handshakedata request) {
+        return !"websocket".equalsIgnoreCase(request.getFieldValue("Upgrade"));
+    }
+
+    public boolean isPlainHttp() {
+        return this.plainHttp;
+    }
+
+    @Override
+    public HandshakeState acceptHandshakeAsServer(ClientHandshake handshakedata) throws InvalidHandshakeException {
+        if (isPlainHttp(handshakedata)) {
+            this.plainHttp = true;
+            return HandshakeState.MATCHED;
+        }
+        return super.acceptHandshakeAsServer(handshakedata);
+    }
+
+    @Override
+    public HandshakeBuilder postProcessHandshakeResponseAsServer(ClientHandshake request, ServerHandshakeBuilder response) throws InvalidHandshakeException {
+        if (this.plainHttp) {
+            return response;
+        }
+        return super.postProcessHandshakeResponseAsServer(request, response);
+    }
+
+    @Override
+    public List<ByteBuffer> createHandshake(Handshakedata handshakedata, WebSocket.Role ownrole, boolean withcontent) {
+        if (!this.plainHttp || !(handshakedata instanceof ServerHandshake)) {
+            return super.createHandshake(handshakedata, ownrole, withcontent);
+        }
+
+        ServerHandshake response = (ServerHandshake) handshakedata;
+        StringBuilder bui = new StringBuilder(100);
+        bui.append("HTTP/1.1 ").append(response.getHttpStatus()).append(' ').append(response.getHttpStatusMessage()).append("\r\n");
+        Iterator<String> it = response.iterateHttpFields();
+        while (it.hasNext()) {
+            String fieldname = it.next();
+            bui.append(fieldname).append(": ").append(response.getFieldValue(fieldname)).append("\r\n");
+        }
+        bui.append("\r\n");
+
+        byte[] header = Charsetfunctions.asciiBytes(bui.toString());
+        byte[] content = withcontent ? response.getContent() : null;
+        ByteBuffer buf = ByteBuffer.allocate(header.length + (content == null ? 0 : content.length));
+        buf.put(header);
+        if (content != null) {
+            buf.put(content);
+        }
+        buf.flip();
+        return Collections.singletonList(buf);
+    }
+
+    @Override
+    public Draft copyInstance() {
+        return new PlainHttpDraft();
+    }
+}
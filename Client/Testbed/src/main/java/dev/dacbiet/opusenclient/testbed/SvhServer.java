@@ -0,0 +1,446 @@
+package dev.dacbiet.opusenclient.testbed;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import socksviahttp.core.consts.Const;
+import socksviahttp.core.net.DataPacket;
+import socksviahttp.core.net.SVHConnection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the SocksViaHTTP servlet and the OPUS server behind it, built on the JDK http server.
+ * <p>
+ * Speaks the SVH packet protocol {@link SVHConnection} uses: init (11/12), data (31/32, XOR encrypted
+ * and gzipped) and close (41/42). The data packets carry the OPUS protocol, which is scripted: the first
+ * init packet is answered with the demanded init fields, the second one with the first batch of APDU
+ * commands of the {@link ApduScript}, and each batch of responses with the next batch. Once the script
+ * is over, the connection is flagged as no longer active and the client ends the transfer.
+ * <p>
+ * Every response is delayed by the configured latency without holding a server thread.
+ * The JDK http server uses Nagle's algorithm unless {@code sun.net.httpserver.nodelay} is true, which adds
+ * the delayed ACK (about 40 ms) to every response. The property is set when this class is loaded, but it is
+ * only read once by the JDK, so JVMs that created an http server earlier should set it on the command line.
+ * Use {@link #getEndpoint()} as the servlet endpoint of the client's connection info.
+ */
+public class SvhServer {
+    private static final Logger logger = LoggerFactory.getLogger(SvhServer.class);
+
+    public static final String PATH = "/svh";
+    public static final String ROUTE_COOKIE = "ROUTEID=.testbed; Path=/";
+
+    static final byte TYPE_INIT = 48;
+    static final byte CMD_INIT = -49;
+    static final byte TYPE_APDU = 16;
+    static final byte CMD_APDU = -17;
+    static final byte STATE_CLOSED = 4;
+
+    static {
+        // the configured latency should be the only latency
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, SvhChannel> channels;
+    private final AtomicInteger nextConnectionId;
+    private final AtomicLong requests;
+    private final AtomicLong bytesIn;
+    private final AtomicLong bytesOut;
+    private volatile ApduScript script;
+    private volatile long latencyMillis;
+
+    /**
+     * @param address address to listen on, port 0 picks a free port
+     * @param script script played to every connection
+     * @throws IOException if the address cannot be bound
+     */
+    public SvhServer(InetSocketAddress address, ApduScript script) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "svh-server");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "svh-latency");
+            t.setDaemon(true);
+            return t;
+        });
+        this.channels = new ConcurrentHashMap<>();
+        this.nextConnectionId = new AtomicInteger(1);
+        this.requests = new AtomicLong();
+        this.bytesIn = new AtomicLong();
+        this.bytesOut = new AtomicLong();
+        this.script = script;
+
+        this.server.setExecutor(this.executor);
+        this.server.createContext(PATH, this::handle);
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stops the server, pending delayed responses are dropped.
+     */
+    public void stop() {
+        this.server.stop(0);
+        this.scheduler.shutdownNow();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Get the servlet endpoint clients should post to.
+     *
+     * @return http endpoint of the servlet
+     */
+    public String getEndpoint() {
+        InetSocketAddress address = this.server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + PATH;
+    }
+
+    /**
+     * Sets the script played to connections initialized afterwards.
+     *
+     * @param script script
+     */
+    public void setScript(ApduScript script) {
+        this.script = script;
+    }
+
+    /**
+     * Delays every response, to mimic the OPUS server's processing time and the round trip to it.
+     *
+     * @param latencyMillis delay in milliseconds, 0 to answer right away
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Get a connection by the id the servlet gave it.
+     *
+     * @param connectionId SVH connection id
+     * @return the connection or null if unknown
+     */
+    public SvhChannel getChannel(String connectionId) {
+        return this.channels.get(connectionId);
+    }
+
+    public long getRequestCount() {
+        return this.requests.get();
+    }
+
+    public long getBytesIn() {
+        return this.bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return this.bytesOut.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        this.requests.incrementAndGet();
+        exchange.getResponseHeaders().add("Set-Cookie", ROUTE_COOKIE);
+
+        // the client fetches the route cookie with a plain GET
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] body = readAll(exchange.getRequestBody());
+        this.bytesIn.addAndGet(body.length);
+
+        byte[] response;
+        try {
+            response = this.process(body).saveToByteArray();
+        } catch (RuntimeException e) {
+            logger.warn("Unable to process SVH packet.", e);
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+
+        long delay = this.latencyMillis;
+        if (delay > 0) {
+            this.scheduler.schedule(() -> this.respond(exchange, response), delay, TimeUnit.MILLISECONDS);
+        } else {
+            this.respond(exchange, response);
+        }
+    }
+
+    private void respond(HttpExchange exchange, byte[] response) {
+        try {
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+            this.bytesOut.addAndGet(response.length);
+        } catch (IOException e) {
+            logger.warn("Unable to send SVH response.", e);
+            exchange.close();
+        }
+    }
+
+    private DataPacket process(byte[] body) {
+        DataPacket request = new DataPacket();
+        request.encryptionKey = SVHConnection.ENCRYPT_KEY;
+        if (request.loadFromByteArray(body) != 0) {
+            return reply(Const.CONNECTION_WRONG_ENCRYPTION_KEY, request.id, "Wrong encryption key".getBytes(), false);
+        }
+
+        switch (request.type) {
+            case Const.CONNECTION_CREATE: {
+                String connectionId = "C" + this.nextConnectionId.getAndIncrement();
+                String target = new String(request.tab);
+                this.channels.put(connectionId, new SvhChannel(connectionId, target, this.script));
+                return reply(Const.CONNECTION_CREATE_OK, connectionId, ("Connected to " + target).getBytes(), false);
+            }
+            case Const.CONNECTION_REQUEST: {
+                SvhChannel channel = this.channels.get(request.id);
+                if (channel == null) {
+                    return reply(Const.CONNECTION_NOT_FOUND, request.id, Const.TAB_EMPTY, false);
+                }
+                return reply(Const.CONNECTION_RESPONSE, request.id, channel.exchange(request.tab), true);
+            }
+            case Const.CONNECTION_DESTROY: {
+                SvhChannel channel = this.channels.remove(request.id);
+                if (channel != null) {
+                    channel.finished.complete(channel.isComplete());
+                }
+                return reply(Const.CONNECTION_DESTROY_OK, request.id, Const.TAB_EMPTY, false);
+            }
+            default:
+                return reply(Const.CONNECTION_NOT_FOUND, request.id, Const.TAB_EMPTY, false);
+        }
+    }
+
+    private static DataPacket reply(int type, String id, byte[] data, boolean encrypt) {
+        DataPacket packet = new DataPacket();
+        packet.type = type;
+        packet.id = id;
+        packet.tab = data;
+        packet.encryptData = encrypt;
+        packet.zipData = encrypt;
+        packet.encryptionKey = SVHConnection.ENCRYPT_KEY;
+        return packet;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            out.write(buf, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * One SVH connection, and the OPUS exchange carried over it.
+     */
+    public static class SvhChannel {
+        private final String connectionId;
+        private final String target;
+        private final ApduScript script;
+        private final List<byte[]> responses;
+        private final CompletableFuture<Boolean> finished;
+        private final long createdNanos;
+        private volatile int operationId;
+        private volatile byte[] atr;
+        private int inits;
+        private int batch;
+        private byte msgNum;
+        private volatile long completedNanos;
+
+        SvhChannel(String connectionId, String target, ApduScript script) {
+            this.connectionId = connectionId;
+            this.target = target;
+            this.script = script;
+            this.responses = Collections.synchronizedList(new ArrayList<>());
+            this.finished = new CompletableFuture<>();
+            this.createdNanos = System.nanoTime();
+        }
+
+        public String getConnectionId() {
+            return this.connectionId;
+        }
+
+        /**
+         * @return address and port the client asked to be relayed to
+         */
+        public String getTarget() {
+            return this.target;
+        }
+
+        public int getOperationId() {
+            return this.operationId;
+        }
+
+        public byte[] getAtr() {
+            return this.atr;
+        }
+
+        /**
+         * @return every APDU response received, in order
+         */
+        public List<byte[]> getResponses() {
+            synchronized (this.responses) {
+                return new ArrayList<>(this.responses);
+            }
+        }
+
+        /**
+         * @return whether every batch of the script was answered
+         */
+        public boolean isComplete() {
+            return this.completedNanos != 0;
+        }
+
+        /**
+         * @return time from the SVH init to the last batch being answered, in nanoseconds, or -1 if not complete
+         */
+        public long getExchangeNanos() {
+            long completed = this.completedNanos;
+            return completed == 0 ? -1 : completed - this.createdNanos;
+        }
+
+        /**
+         * Completes once the client closed the connection, with whether the script was completed.
+         *
+         * @return future of the completion
+         */
+        public CompletableFuture<Boolean> getFinished() {
+            return this.finished;
+        }
+
+        synchronized byte[] exchange(byte[] data) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            byte type = buf.get();
+            byte cmd = buf.get();
+            buf.getShort(); // length
+            buf.get(); // message number
+
+            if (type == TYPE_INIT && cmd == CMD_INIT) {
+                this.readInit(buf);
+                this.inits++;
+                if (this.inits == 1) {
+                    return this.demand();
+                }
+            } else if (type == TYPE_APDU && cmd == CMD_APDU) {
+                this.readResponses(buf);
+                this.batch++;
+            } else {
+                throw new IllegalStateException("Unexpected OPUS packet " + type + "/" + cmd);
+            }
+
+            if (this.batch >= this.script.size()) {
+                if (this.completedNanos == 0) {
+                    this.completedNanos = System.nanoTime();
+                }
+                return this.commands(Collections.<byte[]>emptyList(), STATE_CLOSED);
+            }
+            return this.commands(this.script.getBatch(this.batch), (byte) 0);
+        }
+
+        private void readInit(ByteBuffer buf) {
+            try {
+                int extras = buf.get();
+                for (int i = 0; i < extras; i++) {
+                    byte tag = buf.get();
+                    byte[] value = new byte[buf.get() & 255];
+                    buf.get(value);
+                    if (tag == 1) {
+                        this.operationId = ByteBuffer.wrap(value).getInt();
+                    } else if (tag == 2) {
+                        this.atr = value;
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IllegalStateException("Truncated init packet.", e);
+            }
+        }
+
+        private void readResponses(ByteBuffer buf) {
+            try {
+                buf.getInt(); // operation id
+                buf.get(); // connection active
+                buf.getShort(); // reserved
+                int count = buf.get() & 255;
+                for (int i = 0; i < count; i++) {
+                    byte[] response = new byte[buf.get() & 255];
+                    buf.get(response);
+                    this.responses.add(response);
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IllegalStateException("Truncated response packet.", e);
+            }
+        }
+
+        private byte[] demand() {
+            ByteBuffer buf = ByteBuffer.allocate(9);
+            this.header(buf, TYPE_INIT, CMD_INIT, 9);
+            buf.putShort((short) this.script.getDemandType());
+            buf.put((byte) 0); // no comments
+            buf.put((byte) 0); // always zero
+            return buf.array();
+        }
+
+        private byte[] commands(List<byte[]> commands, byte state) {
+            int length = 15;
+            for (byte[] command : commands) {
+                length += command.length + 1;
+            }
+
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            this.header(buf, TYPE_APDU, CMD_APDU, length);
+            buf.putInt(this.operationId);
+            buf.put(state);
+            buf.putShort((short) 0); // reserved
+            buf.put((byte) commands.size());
+            for (byte[] command : commands) {
+                buf.put((byte) command.length);
+                buf.put(command);
+            }
+            buf.put((byte) 0); // no comments
+            buf.put((byte) 0); // always zero
+            return buf.array();
+        }
+
+        private void header(ByteBuffer buf, byte type, byte cmd, int totalLength) {
+            buf.put(type);
+            buf.put(cmd);
+            buf.putShort((short) (totalLength - 4));
+            buf.put(this.msgNum++);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package dev.dacbiet.opusenclient.testbed;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
+import org.java_websocket.server.DefaultWebSocketServerFactory;
+import org.java_websocket.server.WebSocketServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the SignalR 1.3 server hosting the xscphub, so clients can be run without the real servers.
+ * Negotiate and the WebSocket connection share one port, see {@link PlainHttpDraft}.
+ * Every session is walked through the same events as the real hub: detectReader, detectCard,
+ * GetCardSerialNumberWithID and activatechannel, each sent once the client answered the previous one.
+ * Use {@link #getEndpoint()} as the hub endpoint of the client's connection info.
+ */
+public class XscpHubServer extends WebSocketServer {
+    private static final Logger logger = LoggerFactory.getLogger(XscpHubServer.class);
+
+    public static final String HUB_NAME = "xscphub";
+    public static final String PROTOCOL_VERSION = "1.3";
+
+    private static final String NEGOTIATE_PATH = "/signalr/negotiate";
+    private static final String INIT_MESSAGE = "{\"C\":\"s-0,1\",\"S\":1,\"M\":[]}";
+
+    private final String svhAddress;
+    private final String svhPort;
+    private final Map<WebSocket, HubSession> connections;
+    private final Map<String, HubSession> sessions;
+    private final AtomicInteger nextOperationId;
+    private final AtomicLong nextMessageId;
+    private final ScheduledExecutorService scheduler;
+    private volatile long eventDelayMillis;
+    private volatile ChannelListener channelListener;
+
+    /**
+     * @param address address to listen on, port 0 picks a free port once started
+     * @param svhAddress address sent to clients in activatechannel
+     * @param svhPort port sent to clients in activatechannel
+     */
+    public XscpHubServer(InetSocketAddress address, String svhAddress, String svhPort) {
+        super(address, Collections.<Draft>singletonList(new PlainHttpDraft()));
+        this.svhAddress = svhAddress;
+        this.svhPort = svhPort;
+        this.connections = new ConcurrentHashMap<>();
+        this.sessions = new ConcurrentHashMap<>();
+        this.nextOperationId = new AtomicInteger(1);
+        this.nextMessageId = new AtomicLong();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "xscp-hub-events");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // an invocation result and the event pushed after it are two small writes,
+        // with Nagle's algorithm the event waits for the delayed ACK of the result
+        this.setWebSocketFactory(new DefaultWebSocketServerFactory() {
+            @Override
+            public SocketChannel wrapChannel(SocketChannel channel, SelectionKey key) {
+                try {
+                    channel.socket().setTcpNoDelay(true);
+                } catch (IOException e) {
+                    logger.warn("Unable to disable Nagle's algorithm.", e);
+                }
+                return channel;
+            }
+        });
+    }
+
+    /**
+     * Starts the server and waits for it to listen.
+     *
+     * @param timeoutMillis longest time to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void startAndWait(long timeoutMillis) throws InterruptedException {
+        this.start();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        // the port stays 0 until the server socket is bound
+        while (this.getPort() <= 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Hub server did not start.");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Get the hub endpoint clients should connect to.
+     * Only valid once the server is listening.
+     *
+     * @return http endpoint of the hub
+     */
+    public String getEndpoint() {
+        return "http://" + this.getAddress().getHostString() + ":" + this.getPort();
+    }
+
+    /**
+     * Delays every event pushed to a client, to mimic the round trip to the real server.
+     *
+     * @param eventDelayMillis delay in milliseconds, 0 to push right away
+     */
+    public void setEventDelayMillis(long eventDelayMillis) {
+        this.eventDelayMillis = eventDelayMillis;
+    }
+
+    /**
+     * Get notified when a session was sent activatechannel, e.g. to script the SVH side of the session.
+     *
+     * @param channelListener listener or null
+     */
+    public void setChannelListener(ChannelListener channelListener) {
+        this.channelListener = channelListener;
+    }
+
+    /**
+     * Get a session which joined its room.
+     *
+     * @param sessionId session id given by the client
+     * @return the session or null if unknown
+     */
+    public HubSession getSession(String sessionId) {
+        return this.sessions.get(sessionId);
+    }
+
+    /**
+     * Sends stopXSCP to a session, like the real hub does once the transfer is over.
+     *
+     * @param sessionId session id given by the client
+     * @return whether the session is connected
+     */
+    public boolean stop(String sessionId) {
+        HubSession session = this.sessions.get(sessionId);
+        if (session == null || !session.socket.isOpen()) {
+            return false;
+        }
+
+        this.push(session, "stopXSCP");
+        return true;
+    }
+
+    /**
+     * Stops listening, closes every connection and the event scheduler.
+     */
+    public void shutdown() {
+        this.scheduler.shutdownNow();
+        try {
+            this.stop();
+        } catch (IOException e) {
+            logger.warn("Unable to stop hub server.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft, ClientHandshake request) throws InvalidDataException {
+        ServerHandshakeBuilder response = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+        if (!PlainHttpDraft.isPlainHttp(request)) {
+            return response;
+        }
+
+        // negotiate and the odd abort request are the only plain http requests
+        String body = "";
+        if (request.getResourceDescriptor().startsWith(NEGOTIATE_PATH)) {
+            JsonObject negotiation = new JsonObject();
+            negotiation.addProperty("Url", "/signalr");
+            negotiation.addProperty("ConnectionToken", UUID.randomUUID().toString());
+            negotiation.addProperty("ConnectionId", UUID.randomUUID().toString());
+            negotiation.addProperty("KeepAliveTimeout", 20.0);
+            negotiation.addProperty("DisconnectTimeout", 30.0);
+            negotiation.addProperty("TryWebSockets", true);
+            negotiation.addProperty("ProtocolVersion", PROTOCOL_VERSION);
+            body = negotiation.toString();
+        }
+
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        response.setHttpStatus((short) 200);
+        response.setHttpStatusMessage("OK");
+        response.put("Content-Type", "application/json; charset=UTF-8");
+        response.put("Content-Length", String.valueOf(content.length));
+        response.put("Connection", "close");
+        response.setContent(content);
+        return response;
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        if (PlainHttpDraft.isPlainHttp(handshake)) {
+            // the response is already queued, close without a close frame
+            conn.close(CloseFrame.ABNORMAL_CLOSE);
+            return;
+        }
+
+        this.connections.put(conn, new HubSession(conn));
+        conn.send(INIT_MESSAGE);
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        HubSession session = this.connections.remove(conn);
+        if (session != null) {
+            session.finished.complete(session.transferStatus);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        HubSession session = this.connections.get(conn);
+        if (session == null) {
+            return;
+        }
+
+        JsonObject invocation;
+        try {
+            invocation = JsonParser.parseString(message).getAsJsonObject();
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring malformed hub message: {}", message);
+            return;
+        }
+        if (!invocation.has("M") || !invocation.has("I")) {
+            return;
+        }
+
+        String method = invocation.get("M").getAsString();
+        JsonArray args = invocation.has("A") ? invocation.getAsJsonArray("A") : new JsonArray();
+        session.invoked.put(method, System.nanoTime());
+
+        // every invocation is answered with an empty result
+        JsonObject result = new JsonObject();
+        result.add("I", invocation.get("I"));
+        conn.send(result.toString());
+
+        this.handle(session, method, args);
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        logger.warn("Hub connection error.", ex);
+    }
+
+    private void handle(HubSession session, String method, JsonArray args) {
+        switch (method) {
+            case "joinRoom":
+                session.sessionId = argument(args, 0);
+                this.sessions.put(session.sessionId, session);
+                break;
+            case "endLaunchXSCP":
+                this.push(session, "detectReader");
+                break;
+            case "enddetectReader":
+                this.push(session, "detectCard");
+                break;
+            case "enddetectCard":
+                this.push(session, "GetCardSerialNumberWithID", new JsonPrimitive("1"));
+                break;
+            case "endGetCardSerialNumber":
+            case "endGetCardSerialNumberWithID":
+                session.cardId = argument(args, 1);
+                int operationId = this.nextOperationId.getAndIncrement();
+                session.operationId = operationId;
+                this.push(session, "activatechannel", new JsonPrimitive(String.valueOf(operationId)),
+                        new JsonPrimitive(this.svhAddress), new JsonPrimitive(this.svhPort));
+
+                ChannelListener listener = this.channelListener;
+                if (listener != null) {
+                    listener.channelActivated(session);
+                }
+                break;
+            case "endtransfer":
+                session.transferStatus = argument(args, 1);
+                session.finished.complete(session.transferStatus);
+                break;
+            default:
+                logger.debug("Accepted {} from session {}.", method, session.sessionId);
+                break;
+        }
+    }
+
+    private void push(HubSession session, String event, JsonElement... args) {
+        JsonObject invocation = new JsonObject();
+        invocation.addProperty("H", HUB_NAME);
+        invocation.addProperty("M", event);
+        JsonArray array = new JsonArray();
+        for (JsonElement arg : args) {
+            array.add(arg);
+        }
+        invocation.add("A", array);
+
+        JsonArray messages = new JsonArray();
+        messages.add(invocation);
+        JsonObject message = new JsonObject();
+        message.addProperty("C", "d-" + this.nextMessageId.incrementAndGet());
+        message.add("M", messages);
+        String json = message.toString();
+
+        Runnable send = () -> {
+            if (session.socket.isOpen()) {
+                session.pushed.put(event, System.nanoTime());
+                session.socket.send(json);
+            }
+        };
+
+        long delay = this.eventDelayMillis;
+        if (delay > 0) {
+            this.scheduler.schedule(send, delay, TimeUnit.MILLISECONDS);
+        } else {
+            send.run();
+        }
+    }
+
+    private static String argument(JsonArray args, int index) {
+        if (args.size() <= index || args.get(index).isJsonNull()) {
+            return null;
+        }
+        return args.get(index).getAsString();
+    }
+
+    /**
+     * Listener called when a session is given its SVH channel.
+     */
+    public interface ChannelListener {
+        void channelActivated(HubSession session);
+    }
+
+    /**
+     * One client connected to the hub.
+     * Records when each event was pushed and each invocation received, in {@link System#nanoTime()}.
+     */
+    public static class HubSession {
+        private final WebSocket socket;
+        private final Map<String, Long> pushed;
+        private final Map<String, Long> invoked;
+        private final CompletableFuture<String> finished;
+        private volatile String sessionId;
+        private volatile String cardId;
+        private volatile int operationId;
+        private volatile String transferStatus;
+
+        HubSession(WebSocket socket) {
+            this.socket = socket;
+            this.pushed = new ConcurrentHashMap<>();
+            this.invoked = new ConcurrentHashMap<>();
+            this.finished = new CompletableFuture<>();
+        }
+
+        public String getSessionId() {
+            return this.sessionId;
+        }
+
+        public String getCardId() {
+            return this.cardId;
+        }
+
+        public int getOperationId() {
+            return this.operationId;
+        }
+
+        /**
+         * Get the status given in endtransfer.
+         *
+         * @return status or null if the client did not end the transfer
+         */
+        public String getTransferStatus() {
+            return this.transferStatus;
+        }
+
+        /**
+         * @param event event name
+         * @return time the event was pushed or null if never
+         */
+        public Long getPushedNanos(String event) {
+            return this.pushed.get(event);
+        }
+
+        /**
+         * @param method invoked method name
+         * @return time the invocation was received or null if never
+         */
+        public Long getInvokedNanos(String method) {
+            return this.invoked.get(method);
+        }
+
+        /**
+         * Completes with the endtransfer status once the client ended the transfer,
+         * or with null if it disconnected without doing so.
+         *
+         * @return future of the transfer status
+         */
+        public CompletableFuture<String> getFinished() {
+            return this.finished;
+        }
+    }
+}
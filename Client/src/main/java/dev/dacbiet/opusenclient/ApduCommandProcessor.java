@@ -1,12 +1,14 @@
 package dev.dacbiet.opusenclient;
 
+import dev.dacbiet.opusenclient.rules.ApduRuleEngine;
+import dev.dacbiet.opusenclient.rules.ApduRuleSet;
+
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
  * Processes apdu commands.
- * Possibly modifies apdu command responses if necessary.
+ * Possibly modifies apdu command responses if necessary, as told by its rules, see {@link ApduRuleSet}.
  */
 public class ApduCommandProcessor {
 
@@ -18,13 +20,30 @@ public class ApduCommandProcessor {
     public static final byte P1_IMMEDIATE_RATIFY = -128; // 0x80
     public static final byte[] FAKE_UPDATE_WRITE_RESPONSE = new byte[] { 105, -123 }; // 69 85
 
-    private final List<ApduCommand> history;
+    private final ApduHistory history;
+    private ApduRuleEngine rules;
     private boolean isSecureSessionActive;
     private int openSecureSessionCount;
     private int closeSecureSessionCount;
 
     public ApduCommandProcessor() {
-        this.history = new ArrayList<>();
+        this(new ApduHistory());
+    }
+
+    /**
+     * @param history where the exchanges are kept, only the last two are needed
+     */
+    public ApduCommandProcessor(ApduHistory history) {
+        this(history, ApduRuleSet.defaults());
+    }
+
+    /**
+     * @param history where the exchanges are kept, only the last two are needed
+     * @param rules rewrite rules
+     */
+    public ApduCommandProcessor(ApduHistory history, ApduRuleSet rules) {
+        this.history = history;
+        this.rules = new ApduRuleEngine(rules);
         this.isSecureSessionActive = false;
         this.openSecureSessionCount = 0;
         this.closeSecureSessionCount = 0;
@@ -34,6 +53,19 @@ public class ApduCommandProcessor {
         return this.isSecureSessionActive;
     }
 
+    /**
+     * Replaces the rewrite rules, resetting their hit counts. Meant to be called before the exchange starts.
+     *
+     * @param rules rewrite rules
+     */
+    public void setRules(ApduRuleSet rules) {
+        this.rules = new ApduRuleEngine(rules);
+    }
+
+    public ApduRuleEngine getRuleEngine() {
+        return this.rules;
+    }
+
     /**
      * Processes the command for the card and its response to the command.
      * If non-null array is returned, it should be used as response to server.
@@ -43,7 +75,7 @@ public class ApduCommandProcessor {
      * @return null if response is fine for server
      */
     public byte[] process(byte[] command, byte[] response) {
-        this.history.add(new ApduCommand(command, response));
+        this.history.add(command, response);
 
         if(command.length > 1) {
             if(command[1] == CLS_OPEN_SECURE_SESSION) {
@@ -53,27 +85,9 @@ public class ApduCommandProcessor {
                 this.closeSecureSessionCount++;
                 this.isSecureSessionActive = false;
             }
-
-            if(this.openSecureSessionCount == 2 && this.closeSecureSessionCount == 1 && command[1] == CLS_GET_RESPONSE && this.history.size() > 1) {
-                // For after write/update, and it asks for Get Response
-
-                ApduCommand lastCmd = this.history.get(this.history.size() - 2);
-                // last was 0xD2 or 0xDC and this is Get Response
-                if(lastCmd.command[1] == CLS_WRITE_RECORD || lastCmd.command[1] == CLS_UPDATE_RECORD) {
-                    return Arrays.copyOf(FAKE_UPDATE_WRITE_RESPONSE, FAKE_UPDATE_WRITE_RESPONSE.length);
-                }
-
-            } else if(this.openSecureSessionCount == 2 && this.closeSecureSessionCount == 2 && command[1] == CLS_GET_RESPONSE && this.history.size() > 1) {
-                // For after Close Secure Session, and it asks for Get Response
-                ApduCommand lastCmd = this.history.get(this.history.size() - 2);
-                if(lastCmd.command[1] == CLS_CLOSE_SECURE_SESSION) {
-                    return Arrays.copyOf(lastCmd.response, lastCmd.response.length);
-                }
-
-            }
         }
 
-        return null;
+        return this.rules.process(command, this.history, this.openSecureSessionCount, this.closeSecureSessionCount);
     }
 
     /**
@@ -83,13 +97,24 @@ public class ApduCommandProcessor {
      * @param command apdu command bytes
      */
     public void preProcess(byte[] command) {
-        if(command.length > 1 && command[1] == CLS_CLOSE_SECURE_SESSION && command[2] == 0) { // 0x8e
-            command[2] = P1_IMMEDIATE_RATIFY;
-        }
+        this.rules.preProcess(command);
     }
 
+    /**
+     * Get a copy of the exchanges still kept, oldest first.
+     *
+     * @return exchanges
+     */
     public List<ApduCommand> getHistory() {
-        return new ArrayList<>(this.history);
+        List<ApduCommand> out = new ArrayList<>(this.history.size());
+        for (int age = this.history.size() - 1; age >= 0; age--) {
+            out.add(new ApduCommand(this.history.copyCommand(age), this.history.copyResponse(age)));
+        }
+        return out;
+    }
+
+    public ApduHistory getApduHistory() {
+        return this.history;
     }
 
 
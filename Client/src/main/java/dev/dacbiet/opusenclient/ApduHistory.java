@@ -0,0 +1,238 @@
+package dev.dacbiet.opusenclient;
+
+import dev.dacbiet.opusenclient.journal.SessionJournal;
+
+import java.util.Arrays;
+
+/**
+ * Last apdu exchanges of a session, in constant memory.
+ * Exchanges are copied into one byte arena used as a ring, laid out as
+ * [command length: 2 bytes][command][response], and indexed by offset and length.
+ * The oldest exchanges are dropped once the entry count or the arena is full.
+ * An exchange bigger than the whole arena only keeps its first bytes.
+ * <p>
+ * Every exchange can also be written to a journal, see {@link #setJournal(SessionJournal, long)},
+ * as {@link SessionJournal#APDU_EXCHANGE} records with the same layout.
+ * <p>
+ * Not thread safe, like the processor owning it.
+ */
+public class ApduHistory {
+
+    public static final int DEFAULT_CAPACITY = 32;
+    public static final int DEFAULT_ARENA_SIZE = 8192;
+
+    private static final int ENTRY_HEADER = 2;
+
+    private final byte[] arena;
+    private final int[] offsets;
+    private final int[] commandLengths;
+    private final int[] responseLengths;
+    private int head; // next slot written
+    private int size;
+    private int writePosition;
+    private long totalCount;
+    private SessionJournal journal;
+    private long sessionId;
+
+    public ApduHistory() {
+        this(DEFAULT_CAPACITY, DEFAULT_ARENA_SIZE);
+    }
+
+    /**
+     * @param capacity most exchanges kept
+     * @param arenaSize bytes for the exchanges kept
+     */
+    public ApduHistory(int capacity, int arenaSize) {
+        if (capacity < 2 || arenaSize < 64) {
+            throw new IllegalArgumentException("History must keep at least 2 exchanges and 64 bytes.");
+        }
+
+        this.arena = new byte[arenaSize];
+        this.offsets = new int[capacity];
+        this.commandLengths = new int[capacity];
+        this.responseLengths = new int[capacity];
+    }
+
+    /**
+     * Writes every exchange added afterwards to a journal.
+     *
+     * @param journal journal, or null to stop writing
+     * @param sessionId id of the session the history belongs to
+     */
+    public void setJournal(SessionJournal journal, long sessionId) {
+        this.journal = journal;
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * Adds an exchange, dropping the oldest ones if needed.
+     *
+     * @param command command bytes
+     * @param response response bytes, null is kept as empty
+     */
+    public void add(byte[] command, byte[] response) {
+        int commandLength = Math.min(command.length, 0xFFFF);
+        int responseLength = response == null ? 0 : response.length;
+        int entryLength = ENTRY_HEADER + commandLength + responseLength;
+
+        boolean clipped = entryLength > this.arena.length;
+        if (clipped) {
+            this.spillOversized(command, commandLength, response, responseLength);
+            commandLength = Math.min(commandLength, this.arena.length - ENTRY_HEADER);
+            responseLength = this.arena.length - ENTRY_HEADER - commandLength;
+            entryLength = this.arena.length;
+        }
+
+        // entries are contiguous, wrap to the start if this one does not fit before the end
+        int start = this.writePosition;
+        if (start + entryLength > this.arena.length) {
+            start = 0;
+        }
+        this.evict(start, start + entryLength, start != this.writePosition);
+        if (this.size == this.offsets.length) {
+            this.size--;
+        }
+
+        byte[] arena = this.arena;
+        arena[start] = (byte) (commandLength >> 8);
+        arena[start + 1] = (byte) commandLength;
+        System.arraycopy(command, 0, arena, start + ENTRY_HEADER, commandLength);
+        if (responseLength > 0) {
+            System.arraycopy(response, 0, arena, start + ENTRY_HEADER + commandLength, responseLength);
+        }
+
+        int slot = this.head;
+        this.offsets[slot] = start;
+        this.commandLengths[slot] = commandLength;
+        this.responseLengths[slot] = responseLength;
+        this.head = (slot + 1) % this.offsets.length;
+        this.size++;
+        this.totalCount++;
+        this.writePosition = start + entryLength;
+
+        SessionJournal journal = this.journal;
+        if (journal != null && !clipped) {
+            journal.append(SessionJournal.APDU_EXCHANGE, this.sessionId, arena, start, entryLength);
+        }
+    }
+
+    /**
+     * Drops the oldest entries until none is overwritten by the given arena range.
+     * Entries are only dropped oldest first, so on wrapping the entries left at the end of the arena go too.
+     */
+    private void evict(int from, int to, boolean wrapped) {
+        while (this.size > 0) {
+            int oldest = this.slot(this.size - 1);
+            int start = this.offsets[oldest];
+            int end = start + ENTRY_HEADER + this.commandLengths[oldest] + this.responseLengths[oldest];
+            boolean previousLap = wrapped && start >= this.writePosition;
+            if (!previousLap && (end <= from || start >= to)) {
+                return;
+            }
+            this.size--;
+        }
+    }
+
+    private void spillOversized(byte[] command, int commandLength, byte[] response, int responseLength) {
+        SessionJournal journal = this.journal;
+        if (journal == null) {
+            return;
+        }
+
+        byte[] entry = new byte[ENTRY_HEADER + commandLength + responseLength];
+        entry[0] = (byte) (commandLength >> 8);
+        entry[1] = (byte) commandLength;
+        System.arraycopy(command, 0, entry, ENTRY_HEADER, commandLength);
+        if (responseLength > 0) {
+            System.arraycopy(response, 0, entry, ENTRY_HEADER + commandLength, responseLength);
+        }
+        journal.append(SessionJournal.APDU_EXCHANGE, this.sessionId, entry);
+    }
+
+    /**
+     * @return number of exchanges kept
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return number of exchanges added since the history was created or cleared
+     */
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    /**
+     * @param age 0 for the last exchange, 1 for the one before...
+     * @return length of the command kept
+     */
+    public int getCommandLength(int age) {
+        return this.commandLengths[this.checkedSlot(age)];
+    }
+
+    /**
+     * @param age 0 for the last exchange, 1 for the one before...
+     * @return length of the response kept
+     */
+    public int getResponseLength(int age) {
+        return this.responseLengths[this.checkedSlot(age)];
+    }
+
+    /**
+     * Reads a command byte without copying the command, e.g. its instruction.
+     *
+     * @param age 0 for the last exchange, 1 for the one before...
+     * @param index byte index in the command
+     * @return the byte
+     */
+    public byte getCommandByte(int age, int index) {
+        int slot = this.checkedSlot(age);
+        if (index < 0 || index >= this.commandLengths[slot]) {
+            throw new IndexOutOfBoundsException("Byte " + index + " of " + this.commandLengths[slot]);
+        }
+        return this.arena[this.offsets[slot] + ENTRY_HEADER + index];
+    }
+
+    /**
+     * @param age 0 for the last exchange, 1 for the one before...
+     * @return copy of the command
+     */
+    public byte[] copyCommand(int age) {
+        int slot = this.checkedSlot(age);
+        int start = this.offsets[slot] + ENTRY_HEADER;
+        return Arrays.copyOfRange(this.arena, start, start + this.commandLengths[slot]);
+    }
+
+    /**
+     * @param age 0 for the last exchange, 1 for the one before...
+     * @return copy of the response
+     */
+    public byte[] copyResponse(int age) {
+        int slot = this.checkedSlot(age);
+        int start = this.offsets[slot] + ENTRY_HEADER + this.commandLengths[slot];
+        return Arrays.copyOfRange(this.arena, start, start + this.responseLengths[slot]);
+    }
+
+    /**
+     * Drops every exchange kept.
+     */
+    public void clear() {
+        this.head = 0;
+        this.size = 0;
+        this.writePosition = 0;
+        this.totalCount = 0;
+    }
+
+    private int checkedSlot(int age) {
+        if (age < 0 || age >= this.size) {
+            throw new IndexOutOfBoundsException("Exchange " + age + " of " + this.size);
+        }
+        return this.slot(age);
+    }
+
+    private int slot(int age) {
+        int capacity = this.offsets.length;
+        return ((this.head - 1 - age) % capacity + capacity) % capacity;
+    }
+}
@@ -4,6 +4,12 @@ import dev.dacbiet.opusenclient.actions.Action;
 import dev.dacbiet.opusenclient.actions.ConstructATRAction;
 import dev.dacbiet.opusenclient.actions.GetCardIdAction;
 import dev.dacbiet.opusenclient.actions.InitAction;
+import dev.dacbiet.opusenclient.journal.JournalingNfcHandler;
+import dev.dacbiet.opusenclient.journal.SessionJournal;
+import dev.dacbiet.opusenclient.nfc.CachingNfcHandler;
+import dev.dacbiet.opusenclient.packets.ApduCodec;
+import dev.dacbiet.opusenclient.stats.ApduStats;
+import dev.dacbiet.opusenclient.stats.TimedNfcHandler;
 import microsoft.aspnet.signalr.client.ConnectionState;
 import microsoft.aspnet.signalr.client.LogLevel;
 import microsoft.aspnet.signalr.client.Platform;
@@ -11,18 +17,30 @@ import microsoft.aspnet.signalr.client.PlatformComponent;
 import microsoft.aspnet.signalr.client.SignalRFuture;
 import microsoft.aspnet.signalr.client.http.CookieCredentials;
 import microsoft.aspnet.signalr.client.http.HttpConnection;
+import microsoft.aspnet.signalr.client.http.java.JavaHttpConnection;
 import microsoft.aspnet.signalr.client.hubs.HubConnection;
 import microsoft.aspnet.signalr.client.hubs.HubProxy;
 import microsoft.aspnet.signalr.client.transport.WebsocketTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import socksviahttp.core.net.SVHConnection;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.NoSuchElementException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -38,37 +56,91 @@ public class Client {
         return null;
     };
 
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+
     private final microsoft.aspnet.signalr.client.Logger hubLogger;
 
+    private final long id;
+
     private final ConnectionInfo connectionInfo;
+    private final SessionResources resources;
     private HubConnection hubConnection;
     private HubProxy hubProxy;
     private NfcHandler nfcHandler;
+    private NfcHandler cardHandler;
+    private CachingNfcHandler readCache;
+    private List<byte[]> readAhead;
+    private volatile SessionJournal journal;
 
     private SVHConnection svh;
     private int connectionId;
     private final AtomicBoolean finished;
     private final ConcurrentLinkedQueue<Action> actions;
-    private final CountDownLatch preInitLatch;
-    private final CountDownLatch initLatch;
-    private String cardId;
-    private byte[] atr;
+    private final AtomicBoolean drainScheduled;
+    private volatile ExecutorService actionExecutor;
+    private volatile RetryScheduler retryScheduler;
+    private final CountDownLatch finishedLatch;
+    private final List<Runnable> finishedCallbacks;
+    private final AtomicReference<SessionState> state;
+    private final List<SessionStateListener> stateListeners;
+    private final CompletableFuture<ReloadResult> result;
+    private volatile SessionState lastPhase;
+    private volatile boolean clean;
+    private long startNanos;
+    private SignalRFuture<Void> hubStart;
+    private volatile String cardId;
+    private volatile byte[] atr;
+    private final CompletableFuture<byte[]> atrReady;
+    private final CompletableFuture<Void> roomJoined;
+    private final CompletableFuture<Void> ready;
+    private CompletableFuture<String> svhRoute;
     private final Lock dataHandlerLock;
     private final ApduCommandProcessor apduCommandProcessor;
+    private final ApduCodec apduCodec;
+    private final ApduStats apduStats;
 
     public Client(ConnectionInfo connectionInfo) {
+        this(connectionInfo, null);
+    }
+
+    /**
+     * Creates a client that runs on shared thread pools instead of its own.
+     *
+     * @param connectionInfo connection info
+     * @param resources shared pools, or null for a standalone client
+     */
+    public Client(ConnectionInfo connectionInfo, SessionResources resources) {
+        this.id = NEXT_ID.getAndIncrement();
         this.connectionInfo = connectionInfo;
+        this.resources = resources;
         this.svh = null;
         this.connectionId = -1;
         this.finished = new AtomicBoolean(false);
         this.actions = new ConcurrentLinkedQueue<>();
-        this.preInitLatch = new CountDownLatch(1);
-        this.initLatch = new CountDownLatch(1);
-        this.nfcHandler = DEFAULT_NFC_HANDLER;
+        this.drainScheduled = new AtomicBoolean(false);
+        this.actionExecutor = null;
+        this.retryScheduler = null;
+        this.finishedLatch = new CountDownLatch(1);
+        this.finishedCallbacks = new CopyOnWriteArrayList<>();
+        this.state = new AtomicReference<>(SessionState.NEW);
+        this.stateListeners = new CopyOnWriteArrayList<>();
+        this.result = new CompletableFuture<>();
+        this.lastPhase = SessionState.NEW;
+        this.clean = false;
+        this.cardHandler = DEFAULT_NFC_HANDLER;
+        this.journal = null;
+        this.readAhead = new ArrayList<>();
         this.cardId = "-1";
         this.atr = new byte[0];
+        this.atrReady = new CompletableFuture<>();
+        this.roomJoined = new CompletableFuture<>();
+        this.ready = CompletableFuture.allOf(this.atrReady, this.roomJoined);
         this.dataHandlerLock = new ReentrantLock();
         this.apduCommandProcessor = new ApduCommandProcessor();
+        this.apduCodec = new ApduCodec();
+        this.apduStats = new ApduStats();
+        this.readCache = new CachingNfcHandler(DEFAULT_NFC_HANDLER, this.apduCommandProcessor);
+        this.nfcHandler = this.readCache;
 
         // signalr logger
         this.hubLogger = (s, logLevel) -> {
@@ -100,34 +172,139 @@ public class Client {
         });
     }
 
+    /**
+     * Get the id of this client, unique within the process. Identifies the session in the journal.
+     *
+     * @return client id
+     */
+    public long getId() {
+        return this.id;
+    }
+
     public void setDataHandler(NfcHandler handler) {
         this.dataHandlerLock.lock();
         try {
-            this.nfcHandler = handler;
+            this.cardHandler = handler;
+            this.nfcHandler = this.cached(handler);
         } finally {
             this.dataHandlerLock.unlock();
         }
     }
 
     public void removeDataHandler() {
+        this.setDataHandler(DEFAULT_NFC_HANDLER);
+    }
+
+    /**
+     * Records the hub messages, SVH payloads and APDUs of this session to a journal.
+     *
+     * @param journal journal, or null to stop recording
+     */
+    public void setJournal(SessionJournal journal) {
         this.dataHandlerLock.lock();
         try {
-            this.nfcHandler = DEFAULT_NFC_HANDLER;
+            this.journal = journal;
+            this.nfcHandler = this.cached(this.cardHandler);
         } finally {
             this.dataHandlerLock.unlock();
         }
     }
 
+    /**
+     * Also writes the exchanges as the processor sees them to a journal, see {@link ApduHistory#setJournal(SessionJournal, long)}.
+     * Call before the session starts, the history is only used by the action thread.
+     *
+     * @param journal journal, or null to stop writing
+     */
+    public void setHistoryJournal(SessionJournal journal) {
+        this.apduCommandProcessor.getApduHistory().setJournal(journal, this.id);
+    }
+
+    /**
+     * Reads the given records right after the card application is selected, while the hub connects,
+     * so the server's reads of them are answered from memory.
+     *
+     * @param commands READ RECORD commands, empty to not read ahead
+     */
+    public void setReadAhead(List<byte[]> commands) {
+        this.dataHandlerLock.lock();
+        try {
+            this.readAhead = new ArrayList<>(commands);
+            this.readCache.setReadAhead(this.readAhead);
+        } finally {
+            this.dataHandlerLock.unlock();
+        }
+    }
+
+    /**
+     * Reads ahead the records set with {@link #setReadAhead(List)}, see {@link CachingNfcHandler#readAhead()}.
+     *
+     * @return number of records read
+     */
+    public int readAhead() {
+        return this.getReadCache().readAhead();
+    }
+
+    /**
+     * Get the cache in front of the card, fresh whenever the data handler or journal changes.
+     *
+     * @return read cache
+     */
+    public CachingNfcHandler getReadCache() {
+        this.dataHandlerLock.lock();
+        try {
+            return this.readCache;
+        } finally {
+            this.dataHandlerLock.unlock();
+        }
+    }
+
+    // the journal and stats only see what reaches the card
+    private NfcHandler cached(NfcHandler handler) {
+        SessionJournal journal = this.journal;
+        NfcHandler card = new TimedNfcHandler(handler, this.apduStats);
+        card = journal == null ? card : new JournalingNfcHandler(card, journal, this.id);
+        this.readCache = new CachingNfcHandler(card, this.apduCommandProcessor);
+        this.readCache.setReadAhead(this.readAhead);
+        return this.readCache;
+    }
+
     public SVHConnection getSVH() {
         return this.svh;
     }
 
+    /**
+     * Posts data to the server through the SVH connection, recording both payloads (before encryption and
+     * compression) to the journal if there is one.
+     *
+     * @param data data to send
+     * @return response data or null if the server did not answer with data
+     */
+    public byte[] postData(byte[] data) {
+        SessionJournal journal = this.journal;
+        if (journal != null) {
+            journal.append(SessionJournal.SVH_REQUEST, this.id, data);
+        }
+
+        byte[] resp = this.svh.postData(data);
+        if (journal != null) {
+            journal.append(SessionJournal.SVH_RESPONSE, this.id, resp);
+        }
+        return resp;
+    }
+
     public int getConnectionId() {
         return this.connectionId;
     }
 
+    /**
+     * Queues an action and wakes the action worker if it is idle.
+     *
+     * @param action action to execute
+     */
     public void addAction(Action action) {
         this.actions.add(action);
+        this.scheduleDrain();
     }
 
     public boolean hasActions() {
@@ -153,27 +330,113 @@ public class Client {
 
     public void setATR(byte[] atr) {
         this.atr = Arrays.copyOf(atr, atr.length);
+        this.atrReady.complete(this.getATR());
     }
 
     public byte[] getATR() {
         return Arrays.copyOf(this.atr, this.atr.length);
     }
 
+    /**
+     * Get the retry scheduler of this client, null until the client has started.
+     *
+     * @return retry scheduler
+     */
+    public RetryScheduler getRetryScheduler() {
+        return this.retryScheduler;
+    }
+
+    /**
+     * Get the future completed once the card ATR is constructed.
+     *
+     * @return ATR future
+     */
+    public CompletableFuture<byte[]> getATRReady() {
+        return this.atrReady;
+    }
+
+    /**
+     * Get the future completed once both the card ATR is constructed and the hub room is joined,
+     * whichever finishes last.
+     *
+     * @return ready future
+     */
+    public CompletableFuture<Void> getReady() {
+        return this.ready;
+    }
+
     public ApduCommandProcessor getApduCommandProcessor() {
         return this.apduCommandProcessor;
     }
 
-    public void executeAction() {
+    /**
+     * Get the codec of the session's apdu packets, only used by the action running.
+     *
+     * @return apdu codec
+     */
+    public ApduCodec getApduCodec() {
+        return this.apduCodec;
+    }
+
+    /**
+     * Get the card latency, status words and secure session timing of this session.
+     *
+     * @return apdu stats
+     */
+    public ApduStats getApduStats() {
+        return this.apduStats;
+    }
+
+    /**
+     * Submits a drain of the action queue to the worker unless one is already pending.
+     * Does nothing until the client is started.
+     */
+    private void scheduleDrain() {
+        ExecutorService executor = this.actionExecutor;
+        if (executor == null || this.finished.get() || this.actions.isEmpty()) {
+            return;
+        }
+
+        if (this.drainScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drainActions);
+            } catch (RejectedExecutionException e) {
+                // shut down in the meantime
+                this.drainScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Executes the next queued action, then reschedules itself if more actions were queued meanwhile.
+     * Only one action runs per drain so clients sharing a pool take turns.
+     */
+    private void drainActions() {
+        try {
+            Action action = this.actions.poll();
+            if (action != null && !this.finished.get()) {
+                this.executeAction(action);
+            }
+        } finally {
+            this.drainScheduled.set(false);
+        }
+
+        this.scheduleDrain();
+    }
+
+    private void executeAction(Action action) {
         try {
-            Action action = this.actions.remove();
             logger.info("Executing: {}", action.getClass().getSimpleName());
 
-            if (!action.exec()) {
+            if (action.exec()) {
+                this.retryScheduler.succeeded(action);
+            } else {
                 logger.info("Issue occurred while executing action!");
-                this.actions.add(action);
+                if (!this.retryScheduler.retry(action)) {
+                    logger.info("Out of retries, shutting down client...");
+                    this.shutdown(false);
+                }
             }
-        } catch (NoSuchElementException e) {
-            logger.warn("No actions in the queue!");
         } catch (Exception e) {
             logger.info("Exception occurred while executing action!", e);
             logger.info("Shutting down client...");
@@ -182,30 +445,140 @@ public class Client {
     }
 
     public void shutdown(boolean clean) {
-        this.finished.set(true);
+        if (!this.finished.compareAndSet(false, true)) {
+            return;
+        }
+        this.clean = clean;
+        this.advanceState(SessionState.CLOSING);
         this.actions.clear();
 
-        ConnectionState hubState = this.hubConnection.getState();
-        if(hubState == ConnectionState.Connected) {
-            this.hubProxy.invoke("endtransfer", this.connectionInfo.getSessionId(), clean ? 0 : -1)
-                    .done(obj -> logger.info("Invoked endtransfer!"));
+        if (this.hubConnection != null) {
+            ConnectionState hubState = this.hubConnection.getState();
+            if (hubState == ConnectionState.Connected) {
+                this.hubProxy.invoke("endtransfer", this.connectionInfo.getSessionId(), clean ? 0 : -1)
+                        .done(obj -> logger.info("Invoked endtransfer!"));
+            }
+        }
+
+        if (this.svh != null) {
+            this.svh.closeConnection();
+        }
+        if (this.hubConnection != null) {
+            this.hubConnection.disconnect();
+        }
+
+        RetryScheduler retries = this.retryScheduler;
+        if (retries != null) {
+            retries.cancelAll();
         }
 
-        this.svh.closeConnection();
-        this.hubConnection.disconnect();
+        ExecutorService executor = this.actionExecutor;
+        if (executor != null && this.resources == null) {
+            executor.shutdown();
+        }
+
+        this.finishedLatch.countDown();
         logger.info("shutdown complete");
+
+        long duration = this.startNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startNanos);
+        this.result.complete(new ReloadResult(
+                this.connectionInfo.getSessionId(), this.cardId, clean, this.lastPhase, duration));
+        this.advanceState(SessionState.CLOSED);
+
+        for (Runnable callback : this.finishedCallbacks) {
+            callback.run();
+        }
     }
 
     public void shutdown() {
         this.shutdown(true);
     }
 
-    public void awaitPreInit() throws InterruptedException {
-        this.preInitLatch.await();
+    /**
+     * Get the current phase of the session.
+     *
+     * @return session state
+     */
+    public SessionState getState() {
+        return this.state.get();
+    }
+
+    /**
+     * Registers a listener notified of every later phase change of this session.
+     *
+     * @param listener listener
+     */
+    public void addStateListener(SessionStateListener listener) {
+        this.stateListeners.add(listener);
+    }
+
+    /**
+     * Moves the session to a later phase and notifies the listeners.
+     * Moving to the current or an earlier phase does nothing.
+     *
+     * @param next phase reached
+     * @return true if the session moved to the phase
+     */
+    public boolean advanceState(SessionState next) {
+        SessionState previous;
+        do {
+            previous = this.state.get();
+            if (next.ordinal() <= previous.ordinal()) {
+                return false;
+            }
+        } while (!this.state.compareAndSet(previous, next));
+
+        if (next == SessionState.CLOSING) {
+            this.lastPhase = previous;
+        }
+
+        logger.debug("Session {}: {} -> {}", this.connectionInfo.getSessionId(), previous, next);
+        for (SessionStateListener listener : this.stateListeners) {
+            try {
+                listener.stateChanged(this, previous, next);
+            } catch (RuntimeException e) {
+                logger.error("Session state listener failed.", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the future completed with the session result once the client has shut down.
+     *
+     * @return session result
+     */
+    public CompletableFuture<ReloadResult> getResult() {
+        return this.result;
+    }
+
+    /**
+     * Registers a callback to run once the client has shut down.
+     * Runs immediately if the client has already finished.
+     *
+     * @param callback callback
+     */
+    public void onFinished(Runnable callback) {
+        this.finishedCallbacks.add(callback);
+        if (this.finishedLatch.getCount() == 0 && this.finishedCallbacks.remove(callback)) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Blocks until the client has shut down.
+     */
+    public void awaitFinished() throws InterruptedException {
+        this.finishedLatch.await();
     }
 
-    public void awaitInit() throws InterruptedException {
-        this.initLatch.await();
+    /**
+     * Blocks until the client has shut down or the timeout elapses.
+     *
+     * @return true if the client has finished
+     */
+    public boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.finishedLatch.await(timeout, unit);
     }
 
     /**
@@ -217,9 +590,41 @@ public class Client {
         return this.finished.get();
     }
 
+    /**
+     * Starts the session and blocks until the hub is connected.
+     *
+     * @throws RuntimeException if the hub connection fails
+     */
     public void start() {
-        // must construct ATR
-        this.actions.add(new ConstructATRAction(this));
+        this.startAsync();
+
+        try {
+            this.hubStart.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Starts the session without blocking.
+     * The card ATR is constructed on the action worker while the hub connects, a failed hub connection
+     * shuts the client down.
+     *
+     * @return future completed with the session result once the client has shut down
+     */
+    public CompletableFuture<ReloadResult> startAsync() {
+        this.startNanos = System.nanoTime();
+        if (!this.advanceState(SessionState.HUB_CONNECTING)) {
+            throw new IllegalStateException("Client already started.");
+        }
+
+        this.prefetchSVHRoute();
+
+        // construct the ATR while the hub negotiates and connects
+        this.startActionWorker();
+        this.addAction(new ConstructATRAction(this));
+        this.ready.thenRun(() -> logger.info("Session ready after {} ms.",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startNanos)));
 
         // do init connection stuff for signalr
         this.hubConnection = new HubConnection(
@@ -229,6 +634,14 @@ public class Client {
                 this.hubLogger);
         this.hubConnection.setCredentials(new CookieCredentials(this.connectionInfo.getCookieInfo()));
 
+        HttpConnection httpConnection;
+        if (this.resources != null) {
+            httpConnection = new JavaHttpConnection(this.hubLogger, this.resources.getHttpExecutor());
+            this.hubConnection.setHeartbeatExecutor(this.resources.getScheduler());
+        } else {
+            httpConnection = Platform.createHttpConnection(this.hubLogger);
+        }
+
         // setup our hub proxy (idk)
         this.hubProxy = this.hubConnection.createHubProxy("xscphub");
         this.hubProxy.subscribe(new Object() { // what the
@@ -240,23 +653,69 @@ public class Client {
         this.hubConnection.error(error -> logger.error("Error from hub: {}", error.getMessage()));
         this.hubConnection.connected(() -> logger.info("Connected to hub."));
         this.hubConnection.closed(() -> logger.info("Connection to hub closed."));
+        this.hubConnection.received((json) -> {
+            logger.debug("Raw hub msg: {}", json);
+            SessionJournal journal = this.journal;
+            if (journal != null) {
+                journal.appendText(SessionJournal.HUB_EVENT, this.id, json.toString());
+            }
+        });
 
-        SignalRFuture<Void> startFunc = this.hubConnection.start(new WebsocketTransport(this.hubLogger)).done((o) -> {
+        this.hubStart = this.hubConnection.start(new WebsocketTransport(this.hubLogger, httpConnection));
+        this.hubStart.done((o) -> {
             logger.info("Connected to hub.");
             registerEvents();
-        });
-        this.hubConnection.received((json) -> {
-            logger.debug("Raw hub msg: {}", json.toString());
+        }).onError(error -> {
+            logger.error("Unable to connect to hub.", error);
+            this.shutdown(false);
         });
 
-        try {
-            startFunc.get();
-            logger.info("Complete start.");
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e);
-//        } catch (TimeoutException e) {
-//            logger.error("Timed out while connecting to hub.");
+        return this.result;
+    }
+
+    /**
+     * Opens the servlet connection and fetches its route cookie in the background, so the SVH init
+     * following activatechannel does not pay for the TLS handshake and the extra cookie request.
+     */
+    private void prefetchSVHRoute() {
+        Executor executor;
+        if (this.resources != null) {
+            executor = this.resources.getHttpExecutor();
+        } else {
+            executor = r -> {
+                Thread t = new Thread(r, "opus-svh-prefetch");
+                t.setDaemon(true);
+                t.start();
+            };
+        }
+
+        String endpoint = this.connectionInfo.getServletEndpoint();
+        this.svhRoute = CompletableFuture.supplyAsync(() -> SVHConnection.fetchRoute(endpoint), executor);
+    }
+
+    /**
+     * Creates the action worker, queued actions run as soon as it exists.
+     */
+    private void startActionWorker() {
+        // standalone clients delay their retries on their own action thread
+        ScheduledExecutorService retryExecutor;
+        if (this.resources != null) {
+            retryExecutor = this.resources.getScheduler();
+            this.retryScheduler = new RetryScheduler(retryExecutor, this::addAction);
+            this.actionExecutor = this.resources.getActionExecutor();
+        } else {
+            retryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "opus-client-actions");
+                t.setDaemon(true);
+                return t;
+            });
+            this.retryScheduler = new RetryScheduler(retryExecutor, this::addAction);
+            this.actionExecutor = retryExecutor;
+            if (this.finished.get()) {
+                retryExecutor.shutdown();
+            }
         }
+        this.scheduleDrain();
     }
 
     /**
@@ -290,19 +749,22 @@ public class Client {
             this.connectionId = Integer.parseInt(opId);
             try {
                 logger.info("Start SVH connection with args: {} {} {}", opId, address, port);
-                this.svh = new SVHConnection(this.connectionInfo.getServletEndpoint(), address, port);
+                // an unfinished prefetch is not waited on, the init response sets the cookie then
+                String route = this.svhRoute.getNow(null);
+                this.svh = new SVHConnection(this.connectionInfo.getServletEndpoint(), address, port, route);
                 if (!this.svh.init()) {
                     logger.info("Unable to initialize (mock) socket connection to server!");
                     this.shutdown(false);
                     return;
                 }
 
-                logger.info("Queuing first action...");
-                this.addAction(new InitAction(this));
+                this.advanceState(SessionState.CHANNEL_ACTIVE);
 
-                // count down twice in case get card id was never called
-                this.preInitLatch.countDown();
-                this.initLatch.countDown();
+                // the init packets carry the ATR, wait for it if the card is still answering
+                this.atrReady.thenRun(() -> {
+                    logger.info("Queuing first action...");
+                    this.addAction(new InitAction(this));
+                });
             } catch (Exception e) {
                 logger.error("e: ", e);
             }
@@ -312,12 +774,13 @@ public class Client {
         this.hubProxy.on("GetCardSerialNumber", () -> {
             logger.info("Found GetCardSerialNumber event!");
 
-            String cid = this.cardId;
-            logger.info("Supplying ({}) as card id.", cid);
-            this.preInitLatch.countDown();
+            this.atrReady.thenRun(() -> {
+                String cid = this.cardId;
+                logger.info("Supplying ({}) as card id.", cid);
 
-            this.hubProxy.invoke("endGetCardSerialNumber", this.connectionInfo.getSessionId(), cid)
-                    .done((o) -> logger.info("Invoked endGetCardSerialNumber."));
+                this.hubProxy.invoke("endGetCardSerialNumber", this.connectionInfo.getSessionId(), cid)
+                        .done((o) -> logger.info("Invoked endGetCardSerialNumber."));
+            });
         });
 
         this.hubProxy.on("GetCardSerialNumberWithID", (String cmd) -> {
@@ -329,7 +792,6 @@ public class Client {
                 this.hubProxy.invoke("endGetCardSerialNumberWithID", this.connectionInfo.getSessionId(), cid)
                         .done((o) -> logger.info("Invoked endGetCardSerialNumberWithID."));
             }));
-            this.preInitLatch.countDown();
         }, String.class);
 
         // less used ones?
@@ -353,7 +815,11 @@ public class Client {
 
 
         this.hubProxy.invoke("joinRoom", this.connectionInfo.getSessionId(), "java")
-                .done((obj) -> logger.info("Joined room with session id: " + this.connectionInfo.getSessionId()));
+                .done((obj) -> {
+                    logger.info("Joined room with session id: " + this.connectionInfo.getSessionId());
+                    this.advanceState(SessionState.ROOM_JOINED);
+                    this.roomJoined.complete(null);
+                });
 
         this.hubProxy.invoke("endLaunchXSCP", this.connectionInfo.getSessionId(), "0", XSCP_VERSION)
                 .done((obj) -> logger.info("Invoked endLaunchXSCP."));
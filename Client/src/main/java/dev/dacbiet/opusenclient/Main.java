@@ -1,20 +1,22 @@
 package dev.dacbiet.opusenclient;
 
+import dev.dacbiet.opusenclient.journal.SessionJournal;
+import dev.dacbiet.opusenclient.nfc.CachingNfcHandler;
+import dev.dacbiet.opusenclient.rules.ApduRuleSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
-import javax.smartcardio.Card;
-import javax.smartcardio.CardChannel;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import javax.smartcardio.CardException;
-import javax.smartcardio.CardTerminal;
-import javax.smartcardio.CommandAPDU;
-import javax.smartcardio.ResponseAPDU;
+import javax.smartcardio.CardTerminals;
 import javax.smartcardio.TerminalFactory;
 
 public class Main {
 
     static final Logger logger = LoggerFactory.getLogger(Main.class);
+    static final int JOURNAL_CAPACITY = 64 * 1024 * 1024;
 
     public static void main(String[] args) throws Exception {
 //        args = new String[] {
@@ -26,60 +28,82 @@ public class Main {
             return;
         }
 
-        TerminalFactory factory = TerminalFactory.getDefault();
-        List<CardTerminal> terminals = factory.terminals().list();
-
-        if(terminals.size() < 1) {
-            System.out.println("No terminals found.");
-            return;
+        // each URL is handed to the next card inserted in any reader
+        ConcurrentLinkedQueue<ConnectionInfo> pending = new ConcurrentLinkedQueue<>();
+        for (String url : args) {
+            pending.add(ConnectionInfo.build(url));
         }
+        CountDownLatch remaining = new CountDownLatch(args.length);
 
-        System.out.println(terminals.size() + " terminals found.");
-        CardTerminal term = terminals.get(0);
-        System.out.println("Terminal name: " + term.getName());
+        TerminalFactory factory = TerminalFactory.getDefault();
+        CardTerminals terminals = factory.terminals();
 
-        if (!term.isCardPresent()) {
-            System.out.println("No card present.");
-            return;
+        try {
+            System.out.println(terminals.list().size() + " terminals found.");
+        } catch (CardException e) {
+            System.out.println("No terminals found, waiting for a reader.");
         }
 
-        Card card = term.connect("*");
-        CardChannel channel = card.getBasicChannel();
-
-        NfcHandler nfcHandler = (data) -> {
-            try {
-                ResponseAPDU rspCarte = channel.transmit(new CommandAPDU(data));
-                return rspCarte.getBytes();
-            } catch (CardException e) {
-                e.printStackTrace();
+        // opt in with -Dopusenclient.virtualThreads=true (Java 21+)
+        boolean virtualThreads = Boolean.getBoolean("opusenclient.virtualThreads");
+        try (SessionManager sessionManager = virtualThreads
+                ? SessionManager.withVirtualThreads(args.length)
+                : new SessionManager(args.length);
+             ReaderManager readerManager = new ReaderManager(terminals, sessionManager, new ReaderManager.Listener() {
+                 @Override
+                 public ConnectionInfo cardInserted(String readerName) {
+                     ConnectionInfo connectionInfo = pending.poll();
+                     if (connectionInfo != null) {
+                         System.out.println("Starting session " + connectionInfo.getSessionId() + " on " + readerName);
+                     }
+                     return connectionInfo;
+                 }
+
+                 @Override
+                 public void sessionFinished(String readerName, Client client) {
+                     logger.info("Session on {} finished.", readerName);
+                     if (client != null) {
+                         logger.info("APDU stats of the session: {}", client.getApduStats().toJson());
+                     }
+                     remaining.countDown();
+                 }
+             })) {
+            // replace the default APDU rewrite rules with -Dopusenclient.apduRules=<properties file>
+            String apduRulesFile = System.getProperty("opusenclient.apduRules");
+            if (apduRulesFile != null) {
+                sessionManager.setApduRules(ApduRuleSet.load(Paths.get(apduRulesFile)));
             }
-            return null;
-        };
 
-        ConnectionInfo connectionInfo = ConnectionInfo.build(args[0]);
-        Client client = new Client(connectionInfo);
-        client.setDataHandler(nfcHandler);
-        client.start();
-
-
-        client.awaitPreInit();
-        logger.info("Begin execution of init actions...");
-        while (!client.isFinished() && client.hasActions()) {
-            if (client.hasActions()) {
-                client.executeAction();
+            // read the usual card files while the hub connects with -Dopusenclient.readAhead=true
+            if (Boolean.getBoolean("opusenclient.readAhead")) {
+                sessionManager.setReadAhead(CachingNfcHandler.calypsoReadAhead());
             }
-            // sleep
-        }
 
+            // record the sessions with -Dopusenclient.journal=<file>
+            String journalFile = System.getProperty("opusenclient.journal");
+            SessionJournal journal = null;
+            if (journalFile != null) {
+                journal = SessionJournal.create(Paths.get(journalFile), JOURNAL_CAPACITY);
+                sessionManager.setJournal(journal);
+
+                // also record the APDU history of each session with -Dopusenclient.journalHistory=true
+                if (Boolean.getBoolean("opusenclient.journalHistory")) {
+                    sessionManager.setHistoryJournal(journal);
+                }
+            }
 
-        client.awaitInit();
-        logger.info("Begin execution of actions...");
-        while (!client.isFinished()) {
-            if (client.hasActions()) {
-                client.executeAction();
+            try {
+                readerManager.start();
+                remaining.await();
+                logger.info("APDU stats of all sessions: {}", sessionManager.getApduStats().toJson());
+            } finally {
+                if (journal != null) {
+                    journal.close();
+                }
             }
-            // sleep
         }
+
+        logger.info("All sessions finished.");
     }
 
 }
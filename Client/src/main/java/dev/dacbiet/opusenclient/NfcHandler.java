@@ -7,5 +7,14 @@ public interface NfcHandler {
 
     byte[] send(byte[] data);
 
+    /**
+     * Whether both the card and the reader accept extended length commands, which carry up to 65535 bytes
+     * in one exchange instead of 255 and so need fewer round trips.
+     *
+     * @return true if extended length commands can be sent
+     */
+    default boolean isExtendedLengthSupported() {
+        return false;
+    }
 
 }
@@ -0,0 +1,282 @@
+package dev.dacbiet.opusenclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Watches every attached PC/SC reader and runs one session per inserted card.
+ * Readers can be plugged in or removed while running, removing a card or its reader ends its session.
+ */
+public class ReaderManager implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ReaderManager.class);
+    private static final long WAIT_TIMEOUT_MS = 1000;
+    private static final long NO_READER_RETRY_MS = 2000;
+
+    private final CardTerminals terminals;
+    private final SessionManager sessionManager;
+    private final Listener listener;
+    private final Map<String, ReaderSession> readerSessions;
+    private final Set<String> knownReaders;
+    private final Set<String> presentCards;
+    private volatile boolean running;
+    private Thread monitorThread;
+
+    /**
+     * @param terminals terminals to watch, usually {@code TerminalFactory.getDefault().terminals()}
+     * @param sessionManager manager hosting the sessions
+     * @param listener decides which connection each inserted card gets
+     */
+    public ReaderManager(CardTerminals terminals, SessionManager sessionManager, Listener listener) {
+        this.terminals = terminals;
+        this.sessionManager = sessionManager;
+        this.listener = listener;
+        this.readerSessions = new ConcurrentHashMap<>();
+        this.knownReaders = new HashSet<>();
+        this.presentCards = new HashSet<>();
+        this.running = false;
+    }
+
+    /**
+     * Starts watching the readers on a background thread.
+     */
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+
+        this.running = true;
+        this.monitorThread = new Thread(this::monitor, "opus-reader-monitor");
+        this.monitorThread.setDaemon(true);
+        this.monitorThread.start();
+    }
+
+    public int getActiveSessionCount() {
+        return this.readerSessions.size();
+    }
+
+    private void monitor() {
+        while (this.running) {
+            try {
+                boolean changed = this.terminals.waitForChange(WAIT_TIMEOUT_MS);
+                this.checkReaders();
+
+                // the reader states are only updated when something changed, a card removed and
+                // inserted again between two polls is only seen here
+                if (changed) {
+                    for (CardTerminal terminal : this.terminals.list(CardTerminals.State.CARD_REMOVAL)) {
+                        this.presentCards.remove(terminal.getName());
+                        this.cardRemoved(terminal.getName());
+                    }
+                }
+
+                this.checkCards();
+            } catch (CardException | IllegalStateException e) {
+                // IllegalStateException when no reader is attached, wait for one to be plugged in
+                logger.debug("Unable to wait for reader changes: {}", e.getMessage());
+                this.checkReaders();
+                try {
+                    Thread.sleep(NO_READER_RETRY_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a session when a card shows up in a reader, a card staying in its reader gets no new session
+     * once its session has finished.
+     */
+    private void checkCards() throws CardException {
+        for (CardTerminal terminal : this.terminals.list()) {
+            String name = terminal.getName();
+            boolean present;
+            try {
+                present = terminal.isCardPresent();
+            } catch (CardException e) {
+                logger.debug("Unable to check for a card in {}: {}", name, e.getMessage());
+                continue;
+            }
+
+            if (!present) {
+                if (this.presentCards.remove(name)) {
+                    this.cardRemoved(name);
+                }
+            } else if (!this.presentCards.contains(name) && !this.readerSessions.containsKey(name)) {
+                // the session of a card removed and inserted again may still be ending, retried on the next poll
+                this.presentCards.add(name);
+                this.cardInserted(terminal);
+            }
+        }
+    }
+
+    /**
+     * Compares attached readers against the last known ones to catch hot-plug events.
+     */
+    private void checkReaders() {
+        Set<String> current = new HashSet<>();
+        try {
+            List<CardTerminal> list = this.terminals.list();
+            for (CardTerminal terminal : list) {
+                current.add(terminal.getName());
+            }
+        } catch (CardException e) {
+            // no readers
+        }
+
+        for (String name : current) {
+            if (this.knownReaders.add(name)) {
+                logger.info("Reader attached: {}", name);
+            }
+        }
+
+        this.knownReaders.removeIf(name -> {
+            if (current.contains(name)) {
+                return false;
+            }
+
+            logger.info("Reader detached: {}", name);
+            this.presentCards.remove(name);
+            this.cardRemoved(name);
+            return true;
+        });
+    }
+
+    private void cardInserted(CardTerminal terminal) {
+        String name = terminal.getName();
+        logger.info("Card inserted in {}.", name);
+
+        // connected before asking for a session, so a card that cannot be reached does not use one up
+        Card card;
+        try {
+            card = terminal.connect("*");
+        } catch (CardException e) {
+            logger.error("Unable to connect to card in {}.", name, e);
+            return;
+        }
+
+        ConnectionInfo connectionInfo = this.listener.cardInserted(name);
+        if (connectionInfo == null) {
+            logger.info("No session for card in {}.", name);
+            try {
+                card.disconnect(false);
+            } catch (CardException | IllegalStateException e) {
+                logger.debug("Card in {} already disconnected.", name);
+            }
+            return;
+        }
+
+        ReaderSession readerSession = new ReaderSession(card);
+        this.readerSessions.put(name, readerSession);
+
+        // sessions start asynchronously, so the monitor is never held up by a hub connection
+        Client client = null;
+        try {
+            client = this.sessionManager.tryOpen(connectionInfo, new SmartcardNfcHandler(card.getBasicChannel()));
+        } catch (RuntimeException e) {
+            logger.error("Unable to start session for {}.", name, e);
+        }
+
+        if (client == null) {
+            this.endSession(name, readerSession, null);
+            return;
+        }
+
+        Client started = client;
+        readerSession.client = started;
+        started.onFinished(() -> this.endSession(name, readerSession, started));
+        if (readerSession.removed) {
+            // closed while starting
+            started.shutdown(false);
+        }
+    }
+
+    private void cardRemoved(String name) {
+        ReaderSession readerSession = this.readerSessions.get(name);
+        if (readerSession == null) {
+            return;
+        }
+
+        logger.info("Card removed from {}.", name);
+        readerSession.removed = true;
+        Client client = readerSession.client;
+        if (client != null) {
+            client.shutdown(false);
+        }
+    }
+
+    private void endSession(String name, ReaderSession readerSession, Client client) {
+        if (!this.readerSessions.remove(name, readerSession)) {
+            return;
+        }
+
+        try {
+            readerSession.card.disconnect(false);
+        } catch (CardException | IllegalStateException e) {
+            logger.debug("Card in {} already disconnected.", name);
+        }
+
+        this.listener.sessionFinished(name, client);
+    }
+
+    /**
+     * Stops watching the readers and ends every session started by this manager.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        if (this.monitorThread != null) {
+            this.monitorThread.interrupt();
+        }
+
+        for (String name : this.readerSessions.keySet()) {
+            this.cardRemoved(name);
+        }
+    }
+
+    /**
+     * Callbacks for card sessions.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a card is inserted in a reader without a running session, once connected to it.
+         *
+         * @param readerName name of the reader
+         * @return connection info for the new session, or null to ignore the card
+         */
+        ConnectionInfo cardInserted(String readerName);
+
+        /**
+         * Called once the session started for a reader has finished.
+         *
+         * @param readerName name of the reader
+         * @param client finished client, or null if the session could not be started
+         */
+        default void sessionFinished(String readerName, Client client) {
+        }
+    }
+
+    private static class ReaderSession {
+        private final Card card;
+        private volatile Client client;
+        private volatile boolean removed;
+
+        private ReaderSession(Card card) {
+            this.card = card;
+            this.client = null;
+            this.removed = false;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package dev.dacbiet.opusenclient;
+
+/**
+ * Outcome of a finished client session.
+ */
+public class ReloadResult {
+
+    private final String sessionId;
+    private final String cardId;
+    private final boolean clean;
+    private final SessionState lastPhase;
+    private final long durationMillis;
+
+    /**
+     * @param sessionId session id of the connection info
+     * @param cardId card id supplied to the server
+     * @param clean whether the session ended normally
+     * @param lastPhase furthest phase reached before closing
+     * @param durationMillis time from start to shutdown
+     */
+    public ReloadResult(String sessionId, String cardId, boolean clean, SessionState lastPhase, long durationMillis) {
+        this.sessionId = sessionId;
+        this.cardId = cardId;
+        this.clean = clean;
+        this.lastPhase = lastPhase;
+        this.durationMillis = durationMillis;
+    }
+
+    public String getSessionId() {
+        return this.sessionId;
+    }
+
+    public String getCardId() {
+        return this.cardId;
+    }
+
+    public boolean isClean() {
+        return this.clean;
+    }
+
+    public SessionState getLastPhase() {
+        return this.lastPhase;
+    }
+
+    public long getDurationMillis() {
+        return this.durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ReloadResult{sessionId=" + this.sessionId + ", cardId=" + this.cardId + ", clean=" + this.clean
+                + ", lastPhase=" + this.lastPhase + ", durationMillis=" + this.durationMillis + "}";
+    }
+}
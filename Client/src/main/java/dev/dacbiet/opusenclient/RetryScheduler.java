@@ -0,0 +1,130 @@
+package dev.dacbiet.opusenclient;
+
+import dev.dacbiet.opusenclient.actions.Action;
+import dev.dacbiet.opusenclient.actions.RetryPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Re-queues failed actions after the delay given by their {@link RetryPolicy}.
+ * Keeps track of the attempts of each action until it succeeds or gives up.
+ */
+public class RetryScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(RetryScheduler.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<Action> requeue;
+    private final Map<Action, RetryState> states;
+    private final AtomicLong retries;
+    private final AtomicLong exhausted;
+    private final AtomicLong recovered;
+
+    /**
+     * @param scheduler runs the delayed re-queues
+     * @param requeue called with the action once its delay has elapsed
+     */
+    public RetryScheduler(ScheduledExecutorService scheduler, Consumer<Action> requeue) {
+        this.scheduler = scheduler;
+        this.requeue = requeue;
+        this.states = new ConcurrentHashMap<>();
+        this.retries = new AtomicLong();
+        this.exhausted = new AtomicLong();
+        this.recovered = new AtomicLong();
+    }
+
+    /**
+     * Schedules another execution of an action that failed.
+     *
+     * @param action failed action
+     * @return false if the action ran out of attempts or time and should be given up on
+     */
+    public boolean retry(Action action) {
+        RetryPolicy policy = action.getRetryPolicy();
+        RetryState state = this.states.computeIfAbsent(action, a -> new RetryState(System.nanoTime()));
+        state.attempts++;
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - state.firstFailureNanos);
+        long delay = policy.delayMillis(state.attempts);
+        if (state.attempts >= policy.getMaxAttempts()
+                || (policy.getDeadlineMillis() > 0 && elapsed + delay > policy.getDeadlineMillis())) {
+            logger.info("Giving up on {} after {} attempts.", action.getClass().getSimpleName(), state.attempts);
+            this.states.remove(action);
+            this.exhausted.incrementAndGet();
+            return false;
+        }
+
+        logger.info("Retrying {} in {} ms (attempt {}).", action.getClass().getSimpleName(), delay, state.attempts + 1);
+        try {
+            state.pending = this.scheduler.schedule(() -> this.requeue.accept(action), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            this.states.remove(action);
+            return false;
+        }
+        this.retries.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Forgets the attempts of an action that has now executed successfully.
+     *
+     * @param action action
+     */
+    public void succeeded(Action action) {
+        if (this.states.remove(action) != null) {
+            this.recovered.incrementAndGet();
+        }
+    }
+
+    /**
+     * Cancels every pending retry.
+     */
+    public void cancelAll() {
+        for (RetryState state : this.states.values()) {
+            ScheduledFuture<?> pending = state.pending;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+        }
+        this.states.clear();
+    }
+
+    /**
+     * @return number of retries scheduled so far
+     */
+    public long getRetryCount() {
+        return this.retries.get();
+    }
+
+    /**
+     * @return number of actions given up on
+     */
+    public long getExhaustedCount() {
+        return this.exhausted.get();
+    }
+
+    /**
+     * @return number of actions that succeeded after at least one retry
+     */
+    public long getRecoveredCount() {
+        return this.recovered.get();
+    }
+
+    private static class RetryState {
+        private final long firstFailureNanos;
+        private int attempts;
+        private volatile ScheduledFuture<?> pending;
+
+        private RetryState(long firstFailureNanos) {
+            this.firstFailureNanos = firstFailureNanos;
+        }
+    }
+}
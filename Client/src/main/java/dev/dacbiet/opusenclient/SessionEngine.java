@@ -0,0 +1,82 @@
+package dev.dacbiet.opusenclient;
+
+import dev.dacbiet.opusenclient.journal.SessionJournal;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs client sessions without blocking the caller.
+ * Each run completes its future once the session has shut down, and phase changes are pushed to the
+ * registered {@link SessionStateListener}s.
+ */
+public class SessionEngine {
+
+    private final SessionResources resources;
+    private final List<SessionStateListener> listeners;
+    private volatile SessionJournal journal;
+
+    /**
+     * Creates an engine whose sessions each run on their own threads.
+     */
+    public SessionEngine() {
+        this(null);
+    }
+
+    /**
+     * @param resources pools shared by every session, or null for per-session threads
+     */
+    public SessionEngine(SessionResources resources) {
+        this.resources = resources;
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Registers a listener for the phase changes of every session started afterwards.
+     *
+     * @param listener listener
+     */
+    public void addStateListener(SessionStateListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Records the traffic of every session started afterwards to a journal.
+     *
+     * @param journal journal, or null to stop recording
+     */
+    public void setJournal(SessionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Starts a session.
+     *
+     * @param connectionInfo connection info for the session
+     * @param nfcHandler handler talking to the session's card
+     * @return future completed with the result once the session has shut down
+     */
+    public CompletableFuture<ReloadResult> run(ConnectionInfo connectionInfo, NfcHandler nfcHandler) {
+        return this.start(connectionInfo, nfcHandler).getResult();
+    }
+
+    /**
+     * Starts a session and gives back its client, for callers that need to stop it early.
+     *
+     * @param connectionInfo connection info for the session
+     * @param nfcHandler handler talking to the session's card
+     * @return the started client
+     */
+    public Client start(ConnectionInfo connectionInfo, NfcHandler nfcHandler) {
+        Client client = new Client(connectionInfo, this.resources);
+        client.setDataHandler(nfcHandler);
+        client.setJournal(this.journal);
+        for (SessionStateListener listener : this.listeners) {
+            client.addStateListener(listener);
+        }
+
+        client.startAsync();
+        return client;
+    }
+}
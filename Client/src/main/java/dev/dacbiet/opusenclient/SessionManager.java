@@ -0,0 +1,288 @@
+package dev.dacbiet.opusenclient;
+
+import dev.dacbiet.opusenclient.journal.SessionJournal;
+import dev.dacbiet.opusenclient.rules.ApduRuleSet;
+import dev.dacbiet.opusenclient.stats.ApduStats;
+import org.java_websocket.client.WebSocketClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many concurrent client sessions in one process.
+ * Sessions share the action, http and scheduler pools, so the pool threads do not grow with the session count.
+ * Each hub WebSocket still uses its own read and write thread, which the session limit bounds.
+ */
+public class SessionManager implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SessionManager.class);
+
+    // the WebSocket thread factory is process wide, it is switched back once no virtual thread manager is open
+    private static final Object WEBSOCKET_THREADS_LOCK = new Object();
+    private static int virtualThreadManagers = 0;
+    private static ThreadFactory previousWebSocketThreads = null;
+
+    private final int maxSessions;
+    private final Semaphore admission;
+    private final SessionResources resources;
+    private final Set<Client> sessions;
+    private final boolean virtualThreads;
+    private final AtomicBoolean closed;
+    private final ApduStats apduStats;
+    private volatile SessionJournal journal;
+    private volatile SessionJournal historyJournal;
+    private volatile ApduRuleSet apduRules;
+    private volatile List<byte[]> readAhead;
+
+    /**
+     * @param maxSessions maximum number of sessions running at once
+     * @param actionThreads threads shared by all sessions to run their actions
+     * @param httpThreads threads shared by all sessions for hub http requests
+     */
+    public SessionManager(int maxSessions, int actionThreads, int httpThreads) {
+        this(maxSessions, platformResources(maxSessions, actionThreads, httpThreads), false);
+    }
+
+    public SessionManager(int maxSessions) {
+        this(maxSessions, Runtime.getRuntime().availableProcessors(), Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private SessionManager(int maxSessions, SessionResources resources, boolean virtualThreads) {
+        this.maxSessions = checkPositive(maxSessions);
+        this.admission = new Semaphore(maxSessions, true);
+        this.sessions = ConcurrentHashMap.newKeySet();
+        this.resources = resources;
+        this.virtualThreads = virtualThreads;
+        this.closed = new AtomicBoolean(false);
+        this.apduStats = new ApduStats();
+    }
+
+    /**
+     * Creates a manager running the blocking paths (actions, SVH posts, card transmits, hub http requests
+     * and WebSocket reads and writes) on virtual threads. Only the heartbeat scheduler stays a platform thread.
+     * Requires Java 21+, see {@link VirtualThreads}.
+     * This switches every WebSocket client created in the process to virtual threads until the manager is closed.
+     *
+     * @param maxSessions maximum number of sessions running at once
+     * @return the manager
+     */
+    public static SessionManager withVirtualThreads(int maxSessions) {
+        if (!VirtualThreads.isAvailable()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer.");
+        }
+        checkPositive(maxSessions);
+
+        SessionManager manager = new SessionManager(maxSessions, new SessionResources(
+                VirtualThreads.newExecutor("opus-actions"),
+                VirtualThreads.newExecutor("opus-http"),
+                Executors.newSingleThreadScheduledExecutor(threadFactory("opus-scheduler"))), true);
+        synchronized (WEBSOCKET_THREADS_LOCK) {
+            if (virtualThreadManagers++ == 0) {
+                previousWebSocketThreads = WebSocketClient.getThreadFactory();
+                WebSocketClient.setThreadFactory(VirtualThreads.factory("opus-ws"));
+            }
+        }
+        return manager;
+    }
+
+    public int getMaxSessions() {
+        return this.maxSessions;
+    }
+
+    public int getActiveSessionCount() {
+        return this.sessions.size();
+    }
+
+    public SessionResources getResources() {
+        return this.resources;
+    }
+
+    /**
+     * Get the apdu stats of every session started by this manager, each session also has its own.
+     *
+     * @return aggregate apdu stats
+     */
+    public ApduStats getApduStats() {
+        return this.apduStats;
+    }
+
+    /**
+     * Records the traffic of every session started afterwards to a journal.
+     *
+     * @param journal journal, or null to stop recording
+     */
+    public void setJournal(SessionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Writes the APDU history of every session started afterwards to a journal, for auditing,
+     * see {@link Client#setHistoryJournal(SessionJournal)}.
+     *
+     * @param historyJournal journal, or null to not write it
+     */
+    public void setHistoryJournal(SessionJournal historyJournal) {
+        this.historyJournal = historyJournal;
+    }
+
+    /**
+     * Rewrites the APDUs of every session started afterwards with these rules instead of the defaults.
+     *
+     * @param apduRules rules, or null for the defaults
+     */
+    public void setApduRules(ApduRuleSet apduRules) {
+        this.apduRules = apduRules;
+    }
+
+    /**
+     * Reads these records ahead in every session started afterwards, see {@link Client#setReadAhead(List)}.
+     *
+     * @param readAhead READ RECORD commands, or null to not read ahead
+     */
+    public void setReadAhead(List<byte[]> readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Starts a session, waiting for a free slot if the manager is full.
+     * The hub connection is established in the background.
+     *
+     * @param connectionInfo connection info for the session
+     * @param nfcHandler handler talking to the session's card
+     * @return the started client
+     * @throws InterruptedException if interrupted while waiting for a slot
+     */
+    public Client open(ConnectionInfo connectionInfo, NfcHandler nfcHandler) throws InterruptedException {
+        this.admission.acquire();
+        return this.startSession(connectionInfo, nfcHandler);
+    }
+
+    /**
+     * Starts a session only if a slot is free right now.
+     *
+     * @param connectionInfo connection info for the session
+     * @param nfcHandler handler talking to the session's card
+     * @return the started client or null if the manager is full
+     */
+    public Client tryOpen(ConnectionInfo connectionInfo, NfcHandler nfcHandler) {
+        if (!this.admission.tryAcquire()) {
+            logger.warn("Session rejected, {} sessions already running.", this.maxSessions);
+            return null;
+        }
+
+        return this.startSession(connectionInfo, nfcHandler);
+    }
+
+    private Client startSession(ConnectionInfo connectionInfo, NfcHandler nfcHandler) {
+        Client client;
+        try {
+            client = new Client(connectionInfo, this.resources);
+            client.setDataHandler(nfcHandler);
+            client.setJournal(this.journal);
+            client.setHistoryJournal(this.historyJournal);
+            client.getApduStats().setParent(this.apduStats);
+            ApduRuleSet apduRules = this.apduRules;
+            if (apduRules != null) {
+                client.getApduCommandProcessor().setRules(apduRules);
+            }
+            List<byte[]> readAhead = this.readAhead;
+            if (readAhead != null) {
+                client.setReadAhead(readAhead);
+            }
+            this.sessions.add(client);
+        } catch (RuntimeException e) {
+            this.admission.release();
+            throw e;
+        }
+
+        // the slot is given back exactly once, whichever way the session ends
+        client.onFinished(() -> {
+            if (this.sessions.remove(client)) {
+                this.admission.release();
+            }
+        });
+
+        // a failed hub connection shuts the client down, which frees the slot
+        try {
+            client.startAsync();
+        } catch (RuntimeException e) {
+            logger.error("Unable to start session {}.", connectionInfo.getSessionId(), e);
+            if (this.sessions.remove(client)) {
+                this.admission.release();
+            }
+            client.shutdown(false);
+            throw e;
+        }
+
+        return client;
+    }
+
+    /**
+     * Shuts down every running session and the shared pools.
+     */
+    @Override
+    public void close() {
+        if (!this.closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        List<Client> running = new ArrayList<>(this.sessions);
+        for (Client client : running) {
+            client.shutdown(false);
+        }
+
+        this.resources.getActionExecutor().shutdown();
+        this.resources.getHttpExecutor().shutdown();
+        this.resources.getScheduler().shutdown();
+        try {
+            this.resources.getActionExecutor().awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.virtualThreads) {
+            synchronized (WEBSOCKET_THREADS_LOCK) {
+                if (--virtualThreadManagers == 0) {
+                    WebSocketClient.setThreadFactory(previousWebSocketThreads);
+                    previousWebSocketThreads = null;
+                }
+            }
+        }
+    }
+
+    // every argument is checked before any executor exists, so a bad one leaves no pool behind
+    private static SessionResources platformResources(int maxSessions, int actionThreads, int httpThreads) {
+        checkPositive(maxSessions);
+        checkPositive(actionThreads);
+        checkPositive(httpThreads);
+        return new SessionResources(
+                Executors.newFixedThreadPool(actionThreads, threadFactory("opus-actions")),
+                Executors.newFixedThreadPool(httpThreads, threadFactory("opus-http")),
+                Executors.newSingleThreadScheduledExecutor(threadFactory("opus-scheduler")));
+    }
+
+    private static int checkPositive(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Session and thread counts must be positive.");
+        }
+        return count;
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,38 @@
+package dev.dacbiet.opusenclient;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Thread pools shared by every client hosted in the same process.
+ * Clients never shut these down, the owner (usually a {@link SessionManager}) does.
+ */
+public class SessionResources {
+
+    private final ExecutorService actionExecutor;
+    private final ExecutorService httpExecutor;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param actionExecutor runs client actions
+     * @param httpExecutor runs the blocking hub http requests (negotiate)
+     * @param scheduler runs periodic checks such as the hub heartbeat
+     */
+    public SessionResources(ExecutorService actionExecutor, ExecutorService httpExecutor, ScheduledExecutorService scheduler) {
+        this.actionExecutor = actionExecutor;
+        this.httpExecutor = httpExecutor;
+        this.scheduler = scheduler;
+    }
+
+    public ExecutorService getActionExecutor() {
+        return this.actionExecutor;
+    }
+
+    public ExecutorService getHttpExecutor() {
+        return this.httpExecutor;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return this.scheduler;
+    }
+}
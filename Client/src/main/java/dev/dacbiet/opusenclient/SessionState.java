@@ -0,0 +1,24 @@
+package dev.dacbiet.opusenclient;
+
+/**
+ * Phases of a client session, in the order they are reached.
+ * A session only moves forward, and can go to {@link #CLOSING} from any phase.
+ */
+public enum SessionState {
+    /** Created but not started. */
+    NEW,
+    /** Negotiating and connecting to the SignalR hub. */
+    HUB_CONNECTING,
+    /** Connected to the hub and joined the session's room. */
+    ROOM_JOINED,
+    /** The server activated the SVH channel. */
+    CHANNEL_ACTIVE,
+    /** Sending the init packets with the card ATR. */
+    INIT,
+    /** Relaying APDUs between the server and the card. */
+    APDU_EXCHANGE,
+    /** Shutting down. */
+    CLOSING,
+    /** Shut down, the session result is available. */
+    CLOSED
+}
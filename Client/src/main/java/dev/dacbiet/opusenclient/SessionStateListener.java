@@ -0,0 +1,10 @@
+package dev.dacbiet.opusenclient;
+
+/**
+ * Notified whenever a client session moves to a new phase.
+ * Called on whichever thread caused the change, so implementations should not block.
+ */
+public interface SessionStateListener {
+
+    void stateChanged(Client client, SessionState previous, SessionState state);
+}
@@ -0,0 +1,81 @@
+package dev.dacbiet.opusenclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+/**
+ * Talks to a card through a PC/SC reader.
+ */
+public class SmartcardNfcHandler implements NfcHandler {
+    private static final Logger logger = LoggerFactory.getLogger(SmartcardNfcHandler.class);
+
+    private final CardChannel channel;
+    private final boolean extendedLength;
+
+    /**
+     * Assumes the reader passes extended length commands through, as CCID readers with extended APDU
+     * exchange do, so only the card capabilities decide.
+     *
+     * @param channel channel to the card
+     */
+    public SmartcardNfcHandler(CardChannel channel) {
+        this(channel, true);
+    }
+
+    /**
+     * @param channel channel to the card
+     * @param readerExtendedLength whether the reader passes extended length commands through
+     */
+    public SmartcardNfcHandler(CardChannel channel, boolean readerExtendedLength) {
+        this.channel = channel;
+        this.extendedLength = readerExtendedLength
+                && hasExtendedLengthCapability(channel.getCard().getATR().getHistoricalBytes());
+    }
+
+    @Override
+    public byte[] send(byte[] data) {
+        try {
+            ResponseAPDU rspCarte = this.channel.transmit(new CommandAPDU(data));
+            return rspCarte.getBytes();
+        } catch (CardException e) {
+            logger.error("Unable to transmit to card.", e);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isExtendedLengthSupported() {
+        return this.extendedLength;
+    }
+
+    /**
+     * Reads the card capabilities (ISO/IEC 7816-4 compact-TLV tag 7) from the ATR historical bytes.
+     * Their third byte has bit 7 set when extended Lc and Le fields are supported.
+     *
+     * @param historical historical bytes
+     * @return true if the card supports extended length
+     */
+    static boolean hasExtendedLengthCapability(byte[] historical) {
+        // only the 0x80 category indicator is followed by compact-TLV objects alone
+        if (historical == null || historical.length == 0 || historical[0] != (byte) 0x80) {
+            return false;
+        }
+
+        int i = 1;
+        while (i < historical.length) {
+            int tag = (historical[i] >> 4) & 0x0F;
+            int length = historical[i] & 0x0F;
+            i++;
+            if (tag == 7 && length >= 3 && i + 2 < historical.length) {
+                return (historical[i + 2] & 0x40) != 0;
+            }
+            i += length;
+        }
+        return false;
+    }
+}
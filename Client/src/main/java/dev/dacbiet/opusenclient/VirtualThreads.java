@@ -0,0 +1,41 @@
+package dev.dacbiet.opusenclient;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads.
+ * This is the Java 8 version, the multi-release jar replaces it on Java 21+ with one that creates virtual threads.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if virtual threads can be used on the running JVM
+     */
+    public static boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * Creates a factory of virtual threads.
+     *
+     * @param name prefix for the thread names
+     * @return thread factory
+     */
+    public static ThreadFactory factory(String name) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or newer.");
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread per task.
+     *
+     * @param name prefix for the thread names
+     * @return executor
+     */
+    public static ExecutorService newExecutor(String name) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or newer.");
+    }
+}
@@ -1,6 +1,7 @@
 package dev.dacbiet.opusenclient.actions;
 
 import dev.dacbiet.opusenclient.Client;
+import dev.dacbiet.opusenclient.packets.InitPacketTemplate;
 
 /**
  * Represent action to perform.
@@ -9,6 +10,9 @@ public abstract class Action {
 
     public static final String TERMINAL_NAME = "Neowave LinkeoSIM Reader 0";
 
+    /** Init packets of every session, the terminal fields are encoded once. */
+    protected static final InitPacketTemplate INIT_TEMPLATE = InitPacketTemplate.forTerminal(TERMINAL_NAME);
+
     protected final Client client;
 
     public Action(Client client) {
@@ -23,4 +27,13 @@ public abstract class Action {
      * @throws ActionException execution exception
      */
     public abstract boolean exec() throws ActionException;
+
+    /**
+     * Get how this action is retried when {@link #exec()} returns false.
+     *
+     * @return retry policy
+     */
+    public RetryPolicy getRetryPolicy() {
+        return RetryPolicy.DEFAULT;
+    }
 }
@@ -4,13 +4,13 @@ import dev.dacbiet.opusenclient.ApduCommandProcessor;
 import dev.dacbiet.opusenclient.packets.*;
 import dev.dacbiet.opusenclient.Client;
 import dev.dacbiet.opusenclient.NfcHandler;
+import dev.dacbiet.opusenclient.SessionState;
+import dev.dacbiet.opusenclient.stats.ApduStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Performs communication with the card using NFC (or anything to interface with it).
@@ -22,36 +22,23 @@ import java.util.List;
 public class ApduCommandAction extends Action {
     private static final Logger logger = LoggerFactory.getLogger(ApduCommandAction.class);
 
-    private List<Apdu> commandsToRun;
-    private List<Apdu> apduResponses;
     private DataPacket initPacket;
-    private int connectionId;
+    private ApduBatch batch;
     private byte connectionState;
 
     public ApduCommandAction(Client client, DataPacket initPacket) {
         super(client);
 
         this.initPacket = initPacket;
-        this.commandsToRun = null;
-        this.apduResponses = new ArrayList<>();
+        this.batch = null;
         this.connectionState = -1;
-        this.connectionId = -1;
         this.init();
     }
 
     private void init() {
-        ByteBuffer buf = ByteBuffer.wrap(this.initPacket.getData());
-
-        ApduDataPacket packet = new ApduDataPacket();
-        try {
-            packet.deserialize(buf);
-        } catch (BufferUnderflowException e) {
-            throw new PacketDeserializationException(e);
-        }
-
-        this.commandsToRun = packet.getCommands();
-        this.connectionId = packet.getConnectionId();
-        this.connectionState = packet.getConnectionState();
+        // commands are read in place from the packet, the session's codec reuses the batch for the next packet
+        this.batch = this.client.getApduCodec().decode(this.initPacket.getData());
+        this.connectionState = this.batch.getConnectionState();
     }
 
     @Override
@@ -67,40 +54,45 @@ public class ApduCommandAction extends Action {
             return true;
         }
 
+        this.client.advanceState(SessionState.APDU_EXCHANGE);
         NfcHandler nfc = this.client.getNfcHandler();
         ApduCommandProcessor processor = this.client.getApduCommandProcessor();
-        while (!this.commandsToRun.isEmpty()) {
-            Apdu apdu = this.commandsToRun.get(0);
-            byte[] apduCmd = apdu.getData();
+        ApduCodec codec = this.client.getApduCodec();
+        ApduStats stats = this.client.getApduStats();
+        codec.beginResponse(this.batch, (this.connectionState & 4) == 0);
+        for (int i = 0; i < this.batch.getCommandCount(); i++) {
+            byte[] apduCmd = this.batch.copyCommand(i);
+            if (Apdu.isExtendedLength(apduCmd) && !nfc.isExtendedLengthSupported()) {
+                // the handler may just not know, let the card answer
+                logger.warn("Extended length command sent to a handler not known to support it.");
+            }
+            long start = System.nanoTime();
             processor.preProcess(apduCmd);
+            long processing = System.nanoTime() - start;
             byte[] resp = nfc.send(apduCmd);
 
-            logger.debug("NFC Sent: " + bytesToHex(apduCmd));
-            logger.debug("NFC Received: " + bytesToHex(resp));
+            if (logger.isDebugEnabled()) {
+                logger.debug("NFC Sent: " + bytesToHex(apduCmd));
+                logger.debug("NFC Received: " + bytesToHex(resp));
+            }
 
             if (resp == null) {
                 logger.error("Invalid response from Nfc handler.");
                 throw new ActionException("Invalid response from Nfc handler.");
             }
 
-            byte[] pResp = processor.process(apdu.getData(), resp);
+            start = System.nanoTime();
+            byte[] pResp = processor.process(apduCmd, resp);
+            stats.recordProcessing(processing + System.nanoTime() - start);
             if(pResp != null) {
                 resp = pResp;
                 logger.info("Faking response from handler!");
             }
-            apduResponses.add(new Apdu(resp));
-            this.commandsToRun.remove(0);
+            codec.addResponse(resp);
         }
 
-
         // now send back the responses to the server
-        ApduResponseDataPacket packet = new ApduResponseDataPacket(
-                (this.connectionState & 4) == 0,
-                this.connectionId,
-                this.initPacket.getMsgNum(),
-                this.apduResponses);
-        packet.deserialize(ByteBuffer.wrap(this.initPacket.getData()));
-        byte[] respInitData = this.client.getSVH().postData(packet.serialize());
+        byte[] respInitData = this.client.postData(codec.finishResponse());
         if (respInitData == null || respInitData.length < 5) {
             logger.error("Invalid response packet!");
             throw new ActionException("Invalid response packet!");
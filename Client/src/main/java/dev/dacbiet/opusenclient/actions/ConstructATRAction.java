@@ -25,14 +25,23 @@ public class ConstructATRAction extends Action {
             -112, 0                     // success (0x90)
     };
 
+    // a missing card answers instantly, so space out the taps instead of spinning on the reader
+    static final RetryPolicy CARD_RETRY_POLICY = new RetryPolicy(8, 250, 2000, 2.0, 0.25, 20000);
+
     public ConstructATRAction(Client client) {
         super(client);
     }
 
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return CARD_RETRY_POLICY;
+    }
+
     @Override
     public boolean exec() throws ActionException {
 
         NfcHandler nfc = this.client.getNfcHandler();
+        boolean sessionStart = !this.client.getATRReady().isDone();
 
         byte[] selectResp = nfc.send(SELECT_CMD);
         byte[] data = selectResp;
@@ -71,6 +80,11 @@ public class ConstructATRAction extends Action {
         this.client.setCardId(cardId);
         this.client.setATR(ourAtr);
 
+        if (sessionStart) {
+            // the hub is usually still connecting, read the records the server asks for first meanwhile
+            this.client.readAhead();
+        }
+
         return true;
     }
 
@@ -32,6 +32,11 @@ public class GetCardIdAction extends Action {
         return true;
     }
 
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return ConstructATRAction.CARD_RETRY_POLICY;
+    }
+
     public interface FinishCallback {
         void run(String cardId);
     }
@@ -1,8 +1,8 @@
 package dev.dacbiet.opusenclient.actions;
 
 import dev.dacbiet.opusenclient.Client;
+import dev.dacbiet.opusenclient.SessionState;
 import dev.dacbiet.opusenclient.packets.DataPacket;
-import dev.dacbiet.opusenclient.packets.InitConnectionPacket;
 import dev.dacbiet.opusenclient.packets.PacketDeserializationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,10 +34,10 @@ public class InitAction extends Action {
 
     @Override
     public boolean exec() {
+        this.client.advanceState(SessionState.INIT);
         byte[] cardATRData = this.client.getATR();
 
-        InitConnectionPacket packet = new InitConnectionPacket(this.msgNum, this.connectionId, this.type, Action.TERMINAL_NAME, cardATRData);
-        byte[] respInitData = this.client.getSVH().postData(packet.serialize());
+        byte[] respInitData = this.client.postData(INIT_TEMPLATE.encode(this.msgNum, this.connectionId, this.type, cardATRData));
         if (respInitData == null || respInitData.length < 5) {
             logger.error("Invalid response init packet!");
             throw new ActionException("Invalid response init packet!");
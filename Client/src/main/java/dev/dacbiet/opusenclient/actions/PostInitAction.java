@@ -2,7 +2,6 @@ package dev.dacbiet.opusenclient.actions;
 
 import dev.dacbiet.opusenclient.Client;
 import dev.dacbiet.opusenclient.packets.DataPacket;
-import dev.dacbiet.opusenclient.packets.InitConnectionPacket;
 import dev.dacbiet.opusenclient.packets.PacketDeserializationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,7 +46,7 @@ public class PostInitAction extends Action {
             throw new PacketDeserializationException("Unable to deserialize initialize init packet.");
         }
 
-        short demandType = (short) ((buf.get() << 8) + (buf.get()));
+        short demandType = (short) (((buf.get() & 0xFF) << 8) + (buf.get() & 0xFF));
         if (rp.getCmd() != -49) {
             logger.error("Invalid complement type received from first init message: {}", demandType);
             throw new ActionException("Invalid complement type.");
@@ -59,8 +58,7 @@ public class PostInitAction extends Action {
         // hopefully ATR is constructed beforehand
         byte[] cardATRData = this.client.getATR();
 
-        InitConnectionPacket packet = new InitConnectionPacket(msgNum, connectionId, demandType, Action.TERMINAL_NAME, cardATRData);
-        byte[] respInitData = this.client.getSVH().postData(packet.serialize());
+        byte[] respInitData = this.client.postData(INIT_TEMPLATE.encode(msgNum, connectionId, demandType, cardATRData));
         if (respInitData == null || respInitData.length < 5) {
             logger.error("Invalid response post init packet!");
             throw new ActionException("Invalid post init response packet size.");
@@ -0,0 +1,70 @@
+package dev.dacbiet.opusenclient.actions;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how often and how soon an action that failed (returned false) is executed again.
+ * Delays grow exponentially from the initial delay up to the max delay, and are spread by the jitter
+ * fraction so many sessions failing together do not retry in lockstep.
+ */
+public class RetryPolicy {
+
+    /**
+     * Gives up after 5 attempts or 30 s, after which the client shuts down instead of retrying forever.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, 200, 5000, 2.0, 0.2, 30000);
+
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final double multiplier;
+    private final double jitter;
+    private final long deadlineMillis;
+
+    /**
+     * @param maxAttempts total executions allowed, including the first one
+     * @param initialDelayMillis delay before the first retry
+     * @param maxDelayMillis upper bound of the delay between two retries
+     * @param multiplier growth factor of the delay after each retry
+     * @param jitter fraction (0 to 1) by which a delay is randomly shortened or lengthened
+     * @param deadlineMillis time after the first failure past which no retry is scheduled, 0 for none
+     */
+    public RetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis,
+                       double multiplier, double jitter, long deadlineMillis) {
+        if (maxAttempts < 1 || initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis
+                || multiplier < 1 || jitter < 0 || jitter > 1 || deadlineMillis < 0) {
+            throw new IllegalArgumentException("Invalid retry policy.");
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    public long getDeadlineMillis() {
+        return this.deadlineMillis;
+    }
+
+    /**
+     * Get the delay before the given retry.
+     *
+     * @param retry retry number, starting at 1
+     * @return delay in milliseconds
+     */
+    public long delayMillis(int retry) {
+        double delay = this.initialDelayMillis * Math.pow(this.multiplier, retry - 1);
+        delay = Math.min(delay, this.maxDelayMillis);
+
+        if (this.jitter > 0) {
+            delay *= 1 + this.jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        }
+        return Math.max(0, Math.round(delay));
+    }
+}
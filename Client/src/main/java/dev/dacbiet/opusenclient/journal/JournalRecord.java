@@ -0,0 +1,50 @@
+package dev.dacbiet.opusenclient.journal;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Record read back from a {@link SessionJournal} file.
+ */
+public class JournalRecord {
+
+    private final byte type;
+    private final long nanos;
+    private final long sessionId;
+    private final byte[] payload;
+
+    public JournalRecord(byte type, long nanos, long sessionId, byte[] payload) {
+        this.type = type;
+        this.nanos = nanos;
+        this.sessionId = sessionId;
+        this.payload = payload;
+    }
+
+    /**
+     * @return one of the {@code SessionJournal} record types
+     */
+    public byte getType() {
+        return this.type;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the record was written
+     */
+    public long getNanos() {
+        return this.nanos;
+    }
+
+    public long getSessionId() {
+        return this.sessionId;
+    }
+
+    public byte[] getPayload() {
+        return this.payload;
+    }
+
+    /**
+     * @return the payload of a text record (hub event)
+     */
+    public String getText() {
+        return new String(this.payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,37 @@
+package dev.dacbiet.opusenclient.journal;
+
+import dev.dacbiet.opusenclient.NfcHandler;
+
+/**
+ * Records every APDU command and response going through another handler.
+ */
+public class JournalingNfcHandler implements NfcHandler {
+
+    private final NfcHandler handler;
+    private final SessionJournal journal;
+    private final long sessionId;
+
+    /**
+     * @param handler handler talking to the card
+     * @param journal journal to record to
+     * @param sessionId id of the session the handler belongs to
+     */
+    public JournalingNfcHandler(NfcHandler handler, SessionJournal journal, long sessionId) {
+        this.handler = handler;
+        this.journal = journal;
+        this.sessionId = sessionId;
+    }
+
+    @Override
+    public byte[] send(byte[] data) {
+        this.journal.append(SessionJournal.APDU_COMMAND, this.sessionId, data);
+        byte[] resp = this.handler.send(data);
+        this.journal.append(SessionJournal.APDU_RESPONSE, this.sessionId, resp);
+        return resp;
+    }
+
+    @Override
+    public boolean isExtendedLengthSupported() {
+        return this.handler.isExtendedLengthSupported();
+    }
+}
@@ -0,0 +1,252 @@
+package dev.dacbiet.opusenclient.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only binary journal of session traffic in a memory-mapped file.
+ * Can be shared by every session of the process, records are told apart by their session id.
+ * <p>
+ * The file starts with a header (magic, version, wall clock and {@link System#nanoTime()} at creation)
+ * followed by records laid out as [type: byte][nanos: long][session id: long][length: int][payload].
+ * A zero type marks the end of the records. Writing does not allocate, and once the file is full
+ * further records are dropped and counted.
+ */
+public class SessionJournal implements AutoCloseable {
+
+    public static final byte HUB_EVENT = 1;
+    public static final byte SVH_REQUEST = 2;
+    public static final byte SVH_RESPONSE = 3;
+    public static final byte APDU_COMMAND = 4;
+    public static final byte APDU_RESPONSE = 5;
+    public static final byte APDU_EXCHANGE = 6;
+
+    static final int MAGIC = 0x4F504A31; // OPJ1
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int RECORD_HEADER_SIZE = 1 + 8 + 8 + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+    private long dropped;
+
+    private SessionJournal(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.position = HEADER_SIZE;
+        this.dropped = 0;
+    }
+
+    /**
+     * Creates (or truncates) a journal file.
+     *
+     * @param file journal file
+     * @param capacity size of the file in bytes, the space available for records
+     * @return the journal
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static SessionJournal create(Path file, int capacity) throws IOException {
+        if (capacity <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Journal capacity is too small.");
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            buffer.putInt(0, MAGIC);
+            buffer.putShort(4, VERSION);
+            buffer.putLong(8, System.currentTimeMillis());
+            buffer.putLong(16, System.nanoTime());
+            return new SessionJournal(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a binary record.
+     *
+     * @param type record type
+     * @param sessionId id of the session the record belongs to
+     * @param data payload, null is recorded as empty
+     * @return false if the record was dropped because the journal is full
+     */
+    public boolean append(byte type, long sessionId, byte[] data) {
+        return data == null ? this.append(type, sessionId, null, 0, 0) : this.append(type, sessionId, data, 0, data.length);
+    }
+
+    /**
+     * Appends a binary record.
+     *
+     * @param type record type
+     * @param sessionId id of the session the record belongs to
+     * @param data payload
+     * @param offset start of the payload in data
+     * @param length length of the payload
+     * @return false if the record was dropped because the journal is full
+     */
+    public synchronized boolean append(byte type, long sessionId, byte[] data, int offset, int length) {
+        int start = this.reserve(type, sessionId, length);
+        if (start < 0) {
+            return false;
+        }
+        if (length == 0) {
+            return true;
+        }
+
+        // java 8 has no absolute bulk put, so move the buffer position instead
+        this.buffer.position(start);
+        this.buffer.put(data, offset, length);
+        return true;
+    }
+
+    /**
+     * Appends a text record, encoded as UTF-8.
+     *
+     * @param type record type
+     * @param sessionId id of the session the record belongs to
+     * @param text payload
+     * @return false if the record was dropped because the journal is full
+     */
+    public synchronized boolean appendText(byte type, long sessionId, CharSequence text) {
+        int length = utf8Length(text);
+        int start = this.reserve(type, sessionId, length);
+        if (start < 0) {
+            return false;
+        }
+
+        int pos = start;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                this.buffer.put(pos++, (byte) c);
+            } else if (c < 0x800) {
+                this.buffer.put(pos++, (byte) (0xC0 | (c >> 6)));
+                this.buffer.put(pos++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                this.buffer.put(pos++, (byte) (0xF0 | (cp >> 18)));
+                this.buffer.put(pos++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+                this.buffer.put(pos++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                this.buffer.put(pos++, (byte) (0x80 | (cp & 0x3F)));
+            } else {
+                this.buffer.put(pos++, (byte) (0xE0 | (c >> 12)));
+                this.buffer.put(pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                this.buffer.put(pos++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the record header and moves the write position past the record.
+     *
+     * @return where the payload goes, or -1 if the record does not fit
+     */
+    private int reserve(byte type, long sessionId, int length) {
+        // keep room for the end marker
+        if (length < 0 || (long) this.position + RECORD_HEADER_SIZE + length + 1 > this.buffer.capacity()) {
+            this.dropped++;
+            return -1;
+        }
+
+        int pos = this.position;
+        this.buffer.put(pos, type);
+        this.buffer.putLong(pos + 1, System.nanoTime());
+        this.buffer.putLong(pos + 9, sessionId);
+        this.buffer.putInt(pos + 17, length);
+        this.position = pos + RECORD_HEADER_SIZE + length;
+        return pos + RECORD_HEADER_SIZE;
+    }
+
+    private static int utf8Length(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return number of records dropped because the journal was full
+     */
+    public synchronized long getDroppedCount() {
+        return this.dropped;
+    }
+
+    /**
+     * @return bytes used by the header and the records written so far
+     */
+    public synchronized int size() {
+        return this.position;
+    }
+
+    /**
+     * Flushes the records written so far to the file.
+     */
+    public synchronized void force() {
+        this.buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.buffer.force();
+        this.channel.close();
+    }
+
+    /**
+     * Reads every record of a journal file.
+     *
+     * @param file journal file
+     * @return records in the order they were written
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    public static List<JournalRecord> read(Path file) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buf.remaining() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a session journal: " + file);
+        }
+        if (buf.getShort(4) != VERSION) {
+            throw new IOException("Unsupported journal version: " + buf.getShort(4));
+        }
+
+        List<JournalRecord> records = new ArrayList<>();
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE <= buf.capacity() && buf.get(pos) != 0) {
+            byte type = buf.get(pos);
+            long nanos = buf.getLong(pos + 1);
+            long sessionId = buf.getLong(pos + 9);
+            int length = buf.getInt(pos + 17);
+            if (length < 0 || pos + RECORD_HEADER_SIZE + length > buf.capacity()) {
+                throw new IOException("Truncated journal record at " + pos);
+            }
+
+            byte[] payload = new byte[length];
+            buf.position(pos + RECORD_HEADER_SIZE);
+            buf.get(payload);
+            records.add(new JournalRecord(type, nanos, sessionId, payload));
+            pos += RECORD_HEADER_SIZE + length;
+        }
+        return records;
+    }
+}
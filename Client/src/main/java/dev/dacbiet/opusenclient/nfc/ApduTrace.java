@@ -0,0 +1,160 @@
+package dev.dacbiet.opusenclient.nfc;
+
+import dev.dacbiet.opusenclient.journal.JournalRecord;
+import dev.dacbiet.opusenclient.journal.SessionJournal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Recorded command/response exchanges with a card, in the order they happened.
+ * Immutable, so one trace can back any number of {@link ReplayNfcHandler}s.
+ */
+public class ApduTrace {
+
+    private final List<Exchange> exchanges;
+
+    public ApduTrace(List<Exchange> exchanges) {
+        this.exchanges = Collections.unmodifiableList(new ArrayList<>(exchanges));
+    }
+
+    public List<Exchange> getExchanges() {
+        return this.exchanges;
+    }
+
+    public int size() {
+        return this.exchanges.size();
+    }
+
+    /**
+     * Loads the APDUs of one session recorded in a {@link SessionJournal}.
+     * The latency of an exchange is the time between its command and response records.
+     *
+     * @param file journal file
+     * @param sessionId id of the recorded client
+     * @return the trace
+     * @throws IOException if the journal cannot be read
+     */
+    public static ApduTrace fromJournal(Path file, long sessionId) throws IOException {
+        List<Exchange> exchanges = new ArrayList<>();
+        JournalRecord command = null;
+        for (JournalRecord record : SessionJournal.read(file)) {
+            if (record.getSessionId() != sessionId) {
+                continue;
+            }
+
+            if (record.getType() == SessionJournal.APDU_COMMAND) {
+                command = record;
+            } else if (record.getType() == SessionJournal.APDU_RESPONSE && command != null) {
+                // the journal stores a missing response as an empty payload
+                byte[] resp = record.getPayload().length == 0 ? null : record.getPayload();
+                exchanges.add(new Exchange(command.getPayload(), resp, record.getNanos() - command.getNanos()));
+                command = null;
+            }
+        }
+        return new ApduTrace(exchanges);
+    }
+
+    /**
+     * Loads a text trace.
+     *
+     * @param file trace file
+     * @return the trace
+     * @throws IOException if the file cannot be read
+     * @see #fromHexTrace(List)
+     */
+    public static ApduTrace fromHexTrace(Path file) throws IOException {
+        return fromHexTrace(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a text trace. Each command line ({@code > 00 A4 04 00 ...}) is followed by its response line
+     * ({@code < 90 00}), which can end with the latency in microseconds ({@code < 90 00 @ 1500}).
+     * A response line with no bytes means the card did not answer. Blank lines and lines starting with
+     * {@code #} are ignored.
+     *
+     * @param lines lines of the trace
+     * @return the trace
+     */
+    public static ApduTrace fromHexTrace(List<String> lines) {
+        List<Exchange> exchanges = new ArrayList<>();
+        byte[] command = null;
+        int lineNumber = 0;
+        for (String raw : lines) {
+            lineNumber++;
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (line.startsWith(">")) {
+                command = hexToBytes(line.substring(1));
+            } else if (line.startsWith("<") && command != null) {
+                String resp = line.substring(1);
+                long latencyNanos = 0;
+                int at = resp.indexOf('@');
+                if (at >= 0) {
+                    latencyNanos = Long.parseLong(resp.substring(at + 1).trim()) * 1000;
+                    resp = resp.substring(0, at);
+                }
+
+                byte[] respBytes = hexToBytes(resp);
+                exchanges.add(new Exchange(command, respBytes.length == 0 ? null : respBytes, latencyNanos));
+                command = null;
+            } else {
+                throw new IllegalArgumentException("Unexpected trace line " + lineNumber + ": " + raw);
+            }
+        }
+        return new ApduTrace(exchanges);
+    }
+
+    static byte[] hexToBytes(String hex) {
+        String digits = hex.replaceAll("\\s", "");
+        if (digits.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd number of hex digits: " + hex);
+        }
+
+        byte[] bytes = new byte[digits.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(digits.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    /**
+     * One command sent to the card and its response.
+     */
+    public static class Exchange {
+        private final byte[] command;
+        private final byte[] response;
+        private final long latencyNanos;
+
+        /**
+         * @param command command sent
+         * @param response response received, null if the card did not answer
+         * @param latencyNanos time the card took to answer
+         */
+        public Exchange(byte[] command, byte[] response, long latencyNanos) {
+            this.command = command;
+            this.response = response;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public byte[] getCommand() {
+            return this.command;
+        }
+
+        public byte[] getResponse() {
+            return this.response;
+        }
+
+        public long getLatencyNanos() {
+            return this.latencyNanos;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package dev.dacbiet.opusenclient.nfc;
+
+import dev.dacbiet.opusenclient.ApduCommandProcessor;
+import dev.dacbiet.opusenclient.NfcHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers repeated SELECT and READ RECORD commands (and the GET RESPONSE fetching their data) from memory
+ * while no secure session is active, saving a card round trip each.
+ * <p>
+ * Only successful responses are kept, and only while the card stays in the same state: a SELECT is served
+ * from memory only if it selects what the card already has selected, only reads of one record given by number
+ * in a file named by its SFI are kept (reads of the current file, the current record or the next or previous
+ * record depend on what was read before), and any other command (writes, secure sessions, anything unknown)
+ * forgets everything. Reads inside a secure session always go to the card.
+ * The card can also be read ahead right after the application is selected, see {@link #readAhead()}.
+ * <p>
+ * Belongs to one session, and like the handler it wraps is only used by one thread at a time.
+ */
+public class CachingNfcHandler implements NfcHandler {
+    private static final Logger logger = LoggerFactory.getLogger(CachingNfcHandler.class);
+
+    public static final byte INS_SELECT = -92; // 0xA4
+    public static final byte INS_READ_RECORD = -78; // 0xB2
+    public static final byte INS_GET_RESPONSE = -64; // 0xC0
+
+    private static final int SFI_ENVIRONMENT = 0x07;
+    private static final int SFI_EVENTS = 0x08;
+    private static final int SFI_CONTRACTS = 0x09;
+    private static final int SFI_COUNTERS = 0x19;
+    private static final byte RECORD_SIZE = 29;
+
+    private final NfcHandler handler;
+    private final ApduCommandProcessor processor;
+    private final Map<ByteBuffer, byte[]> responses;
+    private List<byte[]> readAheadCommands;
+    private byte[] selected;
+    private byte[] previous;
+    private boolean previousCached;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param handler handler talking to the card
+     * @param processor processor of the session, tells whether a secure session is active
+     */
+    public CachingNfcHandler(NfcHandler handler, ApduCommandProcessor processor) {
+        this.handler = handler;
+        this.processor = processor;
+        this.responses = new HashMap<>();
+        this.readAheadCommands = new ArrayList<>();
+        this.selected = null;
+        this.previous = null;
+        this.previousCached = false;
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /**
+     * READ RECORD commands for the records of the usual OPUS files: environment, contracts, events and counters.
+     *
+     * @return read ahead commands
+     */
+    public static List<byte[]> calypsoReadAhead() {
+        List<byte[]> commands = new ArrayList<>();
+        commands.add(readRecord(SFI_ENVIRONMENT, 1));
+        for (int record = 1; record <= 4; record++) {
+            commands.add(readRecord(SFI_CONTRACTS, record));
+        }
+        for (int record = 1; record <= 3; record++) {
+            commands.add(readRecord(SFI_EVENTS, record));
+        }
+        commands.add(readRecord(SFI_COUNTERS, 1));
+        return commands;
+    }
+
+    private static byte[] readRecord(int sfi, int record) {
+        return new byte[] { -108, INS_READ_RECORD, (byte) record, (byte) ((sfi << 3) | 4), RECORD_SIZE };
+    }
+
+    /**
+     * @return true for a READ RECORD of one record given by number, in a file given by SFI
+     */
+    private static boolean isAbsoluteRead(byte[] command) {
+        // record 0 is the current record
+        int p2 = command[3] & 0xFF;
+        return command[1] == INS_READ_RECORD && command[2] != 0 && (p2 & 7) == 4 && (p2 >>> 3) != 0;
+    }
+
+    /**
+     * @param commands READ RECORD commands of one record in a file given by SFI, sent by {@link #readAhead()},
+     *                 empty to not read ahead
+     */
+    public void setReadAhead(List<byte[]> commands) {
+        List<byte[]> copy = new ArrayList<>(commands.size());
+        for (byte[] command : commands) {
+            if (command.length < 4 || !isAbsoluteRead(command)) {
+                throw new IllegalArgumentException("Only READ RECORD commands of a record in a file given by SFI can be read ahead.");
+            }
+            copy.add(Arrays.copyOf(command, command.length));
+        }
+        this.readAheadCommands = copy;
+    }
+
+    /**
+     * Reads the read ahead records not known yet from the card, so the server's reads of them are answered
+     * from memory. Meant to be called right after the application is selected, while the session waits on
+     * the network anyway. Does nothing if nothing is selected or a secure session is active.
+     *
+     * @return number of records read
+     */
+    public int readAhead() {
+        if (this.readAheadCommands.isEmpty() || this.selected == null || this.processor.getIsSecureSessionActive()) {
+            return 0;
+        }
+
+        int read = 0;
+        for (byte[] command : this.readAheadCommands) {
+            ByteBuffer key = ByteBuffer.wrap(command);
+            if (this.responses.containsKey(key)) {
+                continue;
+            }
+
+            byte[] resp = this.handler.send(command);
+            this.previous = command;
+            this.previousCached = false;
+            // a chaining card wants a GET RESPONSE we cannot guess the length of, leave the record to the server
+            if (resp == null || resp.length <= 2 || !isOk(resp)) {
+                break;
+            }
+            this.responses.put(key, resp);
+            read++;
+        }
+
+        logger.debug("Read ahead {} records.", read);
+        return read;
+    }
+
+    @Override
+    public byte[] send(byte[] data) {
+        if (data == null || data.length < 4 || this.processor.getIsSecureSessionActive()) {
+            this.invalidate();
+            return this.forward(data);
+        }
+
+        byte ins = data[1];
+        if (ins == INS_SELECT) {
+            return this.select(data);
+        } else if (ins == INS_READ_RECORD && isAbsoluteRead(data)) {
+            return this.read(data);
+        } else if (ins == INS_GET_RESPONSE) {
+            return this.getResponse(data);
+        }
+
+        // might change what the card answers to anything
+        this.invalidate();
+        return this.forward(data);
+    }
+
+    private byte[] select(byte[] command) {
+        ByteBuffer key = ByteBuffer.wrap(command);
+        if (Arrays.equals(command, this.selected)) {
+            byte[] cached = this.responses.get(key);
+            if (cached != null) {
+                return this.hit(command, cached);
+            }
+        }
+
+        byte[] resp = this.forward(command);
+        if (resp == null || resp.length < 2 || !(isOk(resp) || resp[resp.length - 2] == 0x61)) {
+            this.invalidate();
+            return resp;
+        }
+
+        if (!Arrays.equals(command, this.selected)) {
+            this.invalidate();
+            this.selected = Arrays.copyOf(command, command.length);
+        }
+        this.responses.put(ByteBuffer.wrap(this.selected), copy(resp));
+        return resp;
+    }
+
+    private byte[] read(byte[] command) {
+        ByteBuffer key = ByteBuffer.wrap(command);
+        byte[] cached = this.selected == null ? null : this.responses.get(key);
+        if (cached != null) {
+            return this.hit(command, cached);
+        }
+
+        byte[] resp = this.forward(command);
+        if (this.selected != null && resp != null && isOk(resp)) {
+            this.responses.put(ByteBuffer.wrap(Arrays.copyOf(command, command.length)), copy(resp));
+        }
+        return resp;
+    }
+
+    private byte[] getResponse(byte[] command) {
+        byte[] previous = this.previous;
+        if (previous == null || previous.length < 4 || this.selected == null || (previous[1] != INS_SELECT && !isAbsoluteRead(previous))) {
+            return this.forward(command);
+        }
+
+        // the data handed over depends on the command before
+        byte[] keyBytes = Arrays.copyOf(previous, previous.length + command.length);
+        System.arraycopy(command, 0, keyBytes, previous.length, command.length);
+        ByteBuffer key = ByteBuffer.wrap(keyBytes);
+        byte[] cached = this.responses.get(key);
+        if (cached != null) {
+            return this.hit(command, cached);
+        }
+
+        if (this.previousCached) {
+            // the card never saw the command the data is asked for
+            this.forward(previous);
+        }
+
+        byte[] resp = this.forward(command);
+        if (resp != null && isOk(resp)) {
+            this.responses.put(key, copy(resp));
+        }
+        return resp;
+    }
+
+    private byte[] hit(byte[] command, byte[] cached) {
+        this.hits++;
+        this.previous = Arrays.copyOf(command, command.length);
+        this.previousCached = true;
+        return copy(cached);
+    }
+
+    private byte[] forward(byte[] command) {
+        this.misses++;
+        this.previous = command == null ? null : Arrays.copyOf(command, command.length);
+        this.previousCached = false;
+        return this.handler.send(command);
+    }
+
+    /**
+     * Forgets every response and what is selected.
+     */
+    public void invalidate() {
+        this.responses.clear();
+        this.selected = null;
+    }
+
+    /**
+     * @return commands answered from memory
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return commands sent to the card, read ahead excluded
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+
+    @Override
+    public boolean isExtendedLengthSupported() {
+        return this.handler.isExtendedLengthSupported();
+    }
+
+    private static boolean isOk(byte[] resp) {
+        return resp.length >= 2 && resp[resp.length - 2] == -112 && resp[resp.length - 1] == 0;
+    }
+
+    private static byte[] copy(byte[] data) {
+        return Arrays.copyOf(data, data.length);
+    }
+}
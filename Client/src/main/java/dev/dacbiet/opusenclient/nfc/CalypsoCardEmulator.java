@@ -0,0 +1,482 @@
+package dev.dacbiet.opusenclient.nfc;
+
+import dev.dacbiet.opusenclient.NfcHandler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process Calypso card answering like the OPUS application, for tests and load runs without a card.
+ * <p>
+ * Models the application selected by its AID (with the serial number and startup info where
+ * {@code ConstructATRAction} reads them), record files read with READ RECORD, and secure sessions:
+ * writes made during a session are only applied when it is closed, and a session closed without
+ * immediate ratification is only ratified by the next command. Card signatures are random, the
+ * emulator does not check terminal signatures.
+ * <p>
+ * With chaining on, commands returning data answer with 90 00 and the data is fetched with GET RESPONSE,
+ * like cards read through some readers. Any instruction can be scripted with {@link #on(byte, CommandHandler)}.
+ */
+public class CalypsoCardEmulator implements NfcHandler {
+
+    public static final byte INS_SELECT = -92; // 0xA4
+    public static final byte INS_READ_RECORD = -78; // 0xB2
+    public static final byte INS_UPDATE_RECORD = -36; // 0xDC
+    public static final byte INS_WRITE_RECORD = -46; // 0xD2
+    public static final byte INS_OPEN_SECURE_SESSION = -118; // 0x8A
+    public static final byte INS_CLOSE_SECURE_SESSION = -114; // 0x8E
+    public static final byte INS_GET_RESPONSE = -64; // 0xC0
+    public static final byte INS_GET_CHALLENGE = -124; // 0x84
+    public static final byte P1_IMMEDIATE_RATIFY = -128; // 0x80
+
+    public static final byte[] SW_OK = new byte[] { -112, 0 }; // 90 00
+    public static final byte[] SW_WRONG_LENGTH = new byte[] { 103, 0 }; // 67 00
+    public static final byte[] SW_SECURITY_NOT_SATISFIED = new byte[] { 105, -126 }; // 69 82
+    public static final byte[] SW_CONDITIONS_NOT_SATISFIED = new byte[] { 105, -123 }; // 69 85
+    public static final byte[] SW_FILE_NOT_FOUND = new byte[] { 106, -126 }; // 6A 82
+    public static final byte[] SW_RECORD_NOT_FOUND = new byte[] { 106, -125 }; // 6A 83
+    public static final byte[] SW_INS_NOT_SUPPORTED = new byte[] { 109, 0 }; // 6D 00
+
+    /** AID of the OPUS application, "1TIC.ICA". */
+    public static final byte[] AID = new byte[] { 49, 84, 73, 67, 46, 73, 67, 65 };
+    public static final int RECORD_SIZE = 29;
+
+    public static final int SFI_ENVIRONMENT = 0x07;
+    public static final int SFI_EVENTS = 0x08;
+    public static final int SFI_CONTRACTS = 0x09;
+    public static final int SFI_COUNTERS = 0x19;
+
+    private final byte[] serialNumber;
+    private final byte[] startupInfo;
+    private final Map<Integer, byte[][]> files;
+    private final Map<Long, byte[]> sessionWrites;
+    private final CommandHandler[] handlers;
+    private final Random random;
+    private ReplayLatency latency;
+    private boolean chaining;
+    private boolean present;
+    private boolean selected;
+    private boolean sessionOpen;
+    private boolean ratificationPending;
+    private boolean lastSessionRatified;
+    private int transactionCounter;
+    private byte[] pendingResponse;
+    private int sessionsOpened;
+    private int sessionsClosed;
+
+    /**
+     * Creates a card with the usual OPUS files, all records zeroed.
+     *
+     * @param serialNumber card serial number, the card id given to the server
+     */
+    public CalypsoCardEmulator(long serialNumber) {
+        this.serialNumber = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            this.serialNumber[7 - i] = (byte) (serialNumber >>> (8 * i));
+        }
+        // buffer size, platform, app type, app subtype, software issuer, version, revision
+        this.startupInfo = new byte[] { 10, 60, 32, 5, 16, 1, 3 };
+        this.files = new HashMap<>();
+        this.sessionWrites = new HashMap<>();
+        this.handlers = new CommandHandler[256];
+        this.random = new Random(serialNumber);
+        this.latency = ReplayLatency.none();
+        this.chaining = false;
+        this.present = true;
+        this.selected = false;
+        this.sessionOpen = false;
+        this.ratificationPending = false;
+        this.lastSessionRatified = true;
+        this.transactionCounter = 0x1000;
+        this.pendingResponse = null;
+
+        this.addFile(SFI_ENVIRONMENT, 1);
+        this.addFile(SFI_EVENTS, 3);
+        this.addFile(SFI_CONTRACTS, 4);
+        this.addFile(SFI_COUNTERS, 1);
+    }
+
+    /**
+     * Adds (or replaces) a record file with zeroed records.
+     *
+     * @param sfi short file identifier
+     * @param records number of records
+     */
+    public synchronized void addFile(int sfi, int records) {
+        this.files.put(sfi, new byte[records][RECORD_SIZE]);
+    }
+
+    /**
+     * @param sfi short file identifier
+     * @param record record number, starting at 1
+     * @return copy of the record, or null if it does not exist
+     */
+    public synchronized byte[] getRecord(int sfi, int record) {
+        byte[] data = this.record(sfi, record);
+        return data == null ? null : Arrays.copyOf(data, data.length);
+    }
+
+    /**
+     * Writes a record directly, outside of any secure session.
+     *
+     * @param sfi short file identifier
+     * @param record record number, starting at 1
+     * @param data record data, padded or cut to the record size
+     */
+    public synchronized void setRecord(int sfi, int record, byte[] data) {
+        byte[] target = this.record(sfi, record);
+        if (target == null) {
+            throw new IllegalArgumentException("No record " + record + " in file " + sfi);
+        }
+        Arrays.fill(target, (byte) 0);
+        System.arraycopy(data, 0, target, 0, Math.min(data.length, target.length));
+    }
+
+    public synchronized void setLatency(ReplayLatency latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param chaining true to answer data commands with 90 00 and hand the data over on GET RESPONSE
+     */
+    public synchronized void setChaining(boolean chaining) {
+        this.chaining = chaining;
+    }
+
+    /**
+     * Puts the card on or takes it off the reader. A card taken off does not answer, loses its
+     * selection and open session, and an unratified session stays unratified.
+     *
+     * @param present whether the card is on the reader
+     */
+    public synchronized void setPresent(boolean present) {
+        this.present = present;
+        if (!present) {
+            this.selected = false;
+            this.abortSession();
+            if (this.ratificationPending) {
+                this.ratificationPending = false;
+                this.lastSessionRatified = false;
+            }
+            this.pendingResponse = null;
+        }
+    }
+
+    /**
+     * Replaces how an instruction is answered, for instance to inject errors.
+     *
+     * @param ins instruction byte
+     * @param handler handler, or null to restore the emulated behaviour
+     */
+    public synchronized void on(byte ins, CommandHandler handler) {
+        this.handlers[ins & 0xFF] = handler;
+    }
+
+    public synchronized boolean isSessionOpen() {
+        return this.sessionOpen;
+    }
+
+    /**
+     * @return whether the last closed secure session was ratified
+     */
+    public synchronized boolean isLastSessionRatified() {
+        return this.lastSessionRatified && !this.ratificationPending;
+    }
+
+    public synchronized int getSessionsOpened() {
+        return this.sessionsOpened;
+    }
+
+    public synchronized int getSessionsClosed() {
+        return this.sessionsClosed;
+    }
+
+    @Override
+    public byte[] send(byte[] data) {
+        byte[] resp;
+        long latencyNanos;
+        synchronized (this) {
+            if (!this.present || data == null || data.length < 4) {
+                return null;
+            }
+
+            latencyNanos = this.latency.nanos(data, 0);
+            resp = this.process(data);
+        }
+
+        long deadline = System.nanoTime() + latencyNanos;
+        for (long remaining = latencyNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+            // parkNanos returns right away once interrupted, keep the flag and answer early
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        return resp;
+    }
+
+    private byte[] process(byte[] command) {
+        byte ins = command[1];
+
+        // any command after an unratified close ratifies it
+        if (this.ratificationPending && ins != INS_CLOSE_SECURE_SESSION) {
+            this.ratificationPending = false;
+            this.lastSessionRatified = true;
+        }
+
+        CommandHandler handler = this.handlers[ins & 0xFF];
+        if (handler != null) {
+            return handler.handle(this, command);
+        }
+
+        if (ins != INS_GET_RESPONSE) {
+            this.pendingResponse = null;
+        }
+
+        switch (ins) {
+            case INS_SELECT:
+                return this.select(command);
+            case INS_READ_RECORD:
+                return this.readRecord(command);
+            case INS_UPDATE_RECORD:
+            case INS_WRITE_RECORD:
+                return this.writeRecord(command, ins == INS_WRITE_RECORD);
+            case INS_OPEN_SECURE_SESSION:
+                return this.openSecureSession(command);
+            case INS_CLOSE_SECURE_SESSION:
+                return this.closeSecureSession(command);
+            case INS_GET_RESPONSE:
+                return this.getResponse(command);
+            case INS_GET_CHALLENGE:
+                return this.respond(this.randomBytes(8));
+            default:
+                return copy(SW_INS_NOT_SUPPORTED);
+        }
+    }
+
+    private byte[] select(byte[] command) {
+        byte[] aid = data(command);
+        if (aid == null || !Arrays.equals(aid, AID)) {
+            this.selected = false;
+            return copy(SW_FILE_NOT_FOUND);
+        }
+
+        this.selected = true;
+        this.abortSession();
+
+        // ConstructATRAction reads the end of the serial number at offset 23 and the startup info at 30
+        byte[] fci = new byte[36];
+        fci[0] = 0x6F;
+        fci[1] = (byte) (fci.length - 2);
+        fci[2] = (byte) 0x84;
+        fci[3] = (byte) AID.length;
+        System.arraycopy(AID, 0, fci, 4, AID.length);
+        fci[12] = (byte) 0xA5;
+        fci[13] = (byte) (fci.length - 14);
+        fci[14] = (byte) 0xBF;
+        fci[15] = 0x0C;
+        fci[16] = (byte) (fci.length - 17);
+        fci[17] = (byte) 0xC7;
+        fci[18] = (byte) this.serialNumber.length;
+        System.arraycopy(this.serialNumber, 0, fci, 19, this.serialNumber.length);
+        fci[27] = 0x53;
+        fci[28] = (byte) this.startupInfo.length;
+        System.arraycopy(this.startupInfo, 0, fci, 29, this.startupInfo.length);
+        return this.respond(fci);
+    }
+
+    private byte[] readRecord(byte[] command) {
+        if (!this.selected) {
+            return copy(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        int sfi = (command[3] & 0xFF) >>> 3;
+        int record = command[2] & 0xFF;
+        if (!this.files.containsKey(sfi)) {
+            return copy(SW_FILE_NOT_FOUND);
+        }
+
+        byte[] data = this.sessionRecord(sfi, record);
+        if (data == null) {
+            return copy(SW_RECORD_NOT_FOUND);
+        }
+        return this.respond(Arrays.copyOf(data, data.length));
+    }
+
+    private byte[] writeRecord(byte[] command, boolean or) {
+        if (!this.sessionOpen) {
+            return copy(SW_SECURITY_NOT_SATISFIED);
+        }
+
+        int sfi = (command[3] & 0xFF) >>> 3;
+        int record = command[2] & 0xFF;
+        byte[] current = this.sessionRecord(sfi, record);
+        if (current == null) {
+            return copy(this.files.containsKey(sfi) ? SW_RECORD_NOT_FOUND : SW_FILE_NOT_FOUND);
+        }
+
+        byte[] data = data(command);
+        if (data == null || data.length > RECORD_SIZE) {
+            return copy(SW_WRONG_LENGTH);
+        }
+
+        // WRITE RECORD ORs the data into the record, UPDATE RECORD replaces it
+        byte[] updated = or ? Arrays.copyOf(current, current.length) : new byte[RECORD_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            updated[i] = (byte) (or ? updated[i] | data[i] : data[i]);
+        }
+        this.sessionWrites.put(key(sfi, record), updated);
+        return copy(SW_OK);
+    }
+
+    private byte[] openSecureSession(byte[] command) {
+        if (!this.selected) {
+            return copy(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        int record = (command[2] & 0xFF) >>> 3;
+        int sfi = (command[3] & 0xFF) >>> 3;
+        byte[] data = sfi == 0 ? new byte[0] : this.record(sfi, record);
+        if (data == null) {
+            return copy(SW_RECORD_NOT_FOUND);
+        }
+
+        // opening again drops the session in progress
+        this.abortSession();
+        this.sessionOpen = true;
+        this.sessionsOpened++;
+        this.transactionCounter++;
+
+        byte[] resp = new byte[8 + data.length];
+        resp[0] = (byte) (this.transactionCounter >>> 16);
+        resp[1] = (byte) (this.transactionCounter >>> 8);
+        resp[2] = (byte) this.transactionCounter;
+        resp[3] = (byte) this.random.nextInt();
+        resp[4] = (byte) (this.lastSessionRatified ? 0 : 1);
+        resp[5] = 0x30; // kif
+        resp[6] = 0x79; // kvc
+        resp[7] = (byte) data.length;
+        System.arraycopy(data, 0, resp, 8, data.length);
+        return this.respond(resp);
+    }
+
+    private byte[] closeSecureSession(byte[] command) {
+        if (!this.sessionOpen) {
+            return copy(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        byte[] signature = data(command);
+        if (signature == null || signature.length == 0) {
+            // close without a signature aborts the session
+            this.abortSession();
+            return copy(SW_OK);
+        }
+
+        for (Map.Entry<Long, byte[]> write : this.sessionWrites.entrySet()) {
+            byte[] target = this.record((int) (write.getKey() >>> 8), (int) (write.getKey() & 0xFF));
+            System.arraycopy(write.getValue(), 0, target, 0, target.length);
+        }
+        this.sessionWrites.clear();
+        this.sessionOpen = false;
+        this.sessionsClosed++;
+
+        if (command[2] == P1_IMMEDIATE_RATIFY) {
+            this.lastSessionRatified = true;
+        } else {
+            this.ratificationPending = true;
+        }
+        return this.respond(this.randomBytes(4));
+    }
+
+    private byte[] getResponse(byte[] command) {
+        byte[] pending = this.pendingResponse;
+        if (pending == null) {
+            return copy(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        int le = command.length > 4 ? command[4] & 0xFF : 0;
+        if (le == 0 || le >= pending.length) {
+            this.pendingResponse = null;
+            return withStatus(pending, SW_OK);
+        }
+
+        // hand over what was asked for and say how much is left
+        this.pendingResponse = Arrays.copyOfRange(pending, le, pending.length);
+        byte[] more = new byte[] { 0x61, (byte) Math.min(this.pendingResponse.length, 255) };
+        return withStatus(Arrays.copyOf(pending, le), more);
+    }
+
+    private byte[] respond(byte[] data) {
+        if (this.chaining) {
+            this.pendingResponse = data;
+            return copy(SW_OK);
+        }
+        return withStatus(data, SW_OK);
+    }
+
+    private void abortSession() {
+        this.sessionOpen = false;
+        this.sessionWrites.clear();
+    }
+
+    private byte[] record(int sfi, int record) {
+        byte[][] file = this.files.get(sfi);
+        if (file == null || record < 1 || record > file.length) {
+            return null;
+        }
+        return file[record - 1];
+    }
+
+    private byte[] sessionRecord(int sfi, int record) {
+        byte[] written = this.sessionWrites.get(key(sfi, record));
+        return written != null ? written : this.record(sfi, record);
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        this.random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static long key(int sfi, int record) {
+        return ((long) sfi << 8) | record;
+    }
+
+    private static byte[] data(byte[] command) {
+        if (command.length < 5) {
+            return null;
+        }
+        int lc = command[4] & 0xFF;
+        if (command.length < 5 + lc) {
+            return null;
+        }
+        return Arrays.copyOfRange(command, 5, 5 + lc);
+    }
+
+    private static byte[] withStatus(byte[] data, byte[] status) {
+        byte[] resp = Arrays.copyOf(data, data.length + 2);
+        resp[data.length] = status[0];
+        resp[data.length + 1] = status[1];
+        return resp;
+    }
+
+    private static byte[] copy(byte[] status) {
+        return Arrays.copyOf(status, status.length);
+    }
+
+    /**
+     * Scripted answer to an instruction.
+     */
+    public interface CommandHandler {
+
+        /**
+         * @param card card receiving the command
+         * @param command full command
+         * @return response with its status word, or null for no answer
+         */
+        byte[] handle(CalypsoCardEmulator card, byte[] command);
+    }
+}
@@ -0,0 +1,61 @@
+package dev.dacbiet.opusenclient.nfc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long a {@link ReplayNfcHandler} waits before answering a command.
+ */
+public interface ReplayLatency {
+
+    /**
+     * @param command command being answered
+     * @param recordedNanos latency recorded with the matched exchange
+     * @return time to wait in nanoseconds
+     */
+    long nanos(byte[] command, long recordedNanos);
+
+    /**
+     * @return latency that answers immediately
+     */
+    static ReplayLatency none() {
+        return (command, recordedNanos) -> 0;
+    }
+
+    /**
+     * @return latency of the recording
+     */
+    static ReplayLatency recorded() {
+        return (command, recordedNanos) -> recordedNanos;
+    }
+
+    /**
+     * @return same latency for every command
+     */
+    static ReplayLatency fixed(long duration, TimeUnit unit) {
+        long nanos = unit.toNanos(duration);
+        return (command, recordedNanos) -> nanos;
+    }
+
+    /**
+     * Synthetic latency chosen by instruction byte (INS), such as a slow secure session opening.
+     *
+     * @param defaultDuration latency of instructions not in the map
+     * @param byInstruction latency per instruction byte
+     * @param unit unit of the durations
+     * @return the latency
+     */
+    static ReplayLatency byInstruction(long defaultDuration, Map<Byte, Long> byInstruction, TimeUnit unit) {
+        long defaultNanos = unit.toNanos(defaultDuration);
+        long[] table = new long[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = defaultNanos;
+        }
+        for (Map.Entry<Byte, Long> entry : new HashMap<>(byInstruction).entrySet()) {
+            table[entry.getKey() & 0xFF] = unit.toNanos(entry.getValue());
+        }
+
+        return (command, recordedNanos) -> command.length < 2 ? defaultNanos : table[command[1] & 0xFF];
+    }
+}
@@ -0,0 +1,121 @@
+package dev.dacbiet.opusenclient.nfc;
+
+import dev.dacbiet.opusenclient.NfcHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Answers commands from a recorded {@link ApduTrace} instead of a card, for load tests without readers.
+ * <p>
+ * Replay follows the recording: the next recorded exchange is used if its command is the same, or has the
+ * same header (CLA INS P1 P2) since commands carrying server cryptograms differ between runs. Otherwise the
+ * next exchange with the same command is searched for, first after the current one, then from the start.
+ * A command found nowhere gets no answer, like a card taken away.
+ * <p>
+ * One handler replays one session, create one per client.
+ */
+public class ReplayNfcHandler implements NfcHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayNfcHandler.class);
+
+    private final List<ApduTrace.Exchange> exchanges;
+    private final ReplayLatency latency;
+    private int cursor;
+    private int misses;
+
+    public ReplayNfcHandler(ApduTrace trace) {
+        this(trace, ReplayLatency.recorded());
+    }
+
+    public ReplayNfcHandler(ApduTrace trace, ReplayLatency latency) {
+        this.exchanges = trace.getExchanges();
+        this.latency = latency;
+        this.cursor = 0;
+        this.misses = 0;
+    }
+
+    @Override
+    public byte[] send(byte[] data) {
+        ApduTrace.Exchange exchange;
+        synchronized (this) {
+            int index = this.find(data);
+            if (index < 0) {
+                this.misses++;
+                logger.warn("No recorded response for command {}.", Arrays.toString(data));
+                return null;
+            }
+
+            exchange = this.exchanges.get(index);
+            this.cursor = index + 1;
+        }
+
+        pause(this.latency.nanos(data, exchange.getLatencyNanos()));
+        byte[] resp = exchange.getResponse();
+        return resp == null ? null : Arrays.copyOf(resp, resp.length);
+    }
+
+    /**
+     * Replays whatever the recorded card answered, extended length commands included.
+     */
+    @Override
+    public boolean isExtendedLengthSupported() {
+        return true;
+    }
+
+    private int find(byte[] data) {
+        if (this.cursor < this.exchanges.size()) {
+            byte[] next = this.exchanges.get(this.cursor).getCommand();
+            if (Arrays.equals(next, data) || sameHeader(next, data)) {
+                return this.cursor;
+            }
+        }
+
+        for (int i = this.cursor; i < this.exchanges.size(); i++) {
+            if (Arrays.equals(this.exchanges.get(i).getCommand(), data)) {
+                return i;
+            }
+        }
+        for (int i = 0; i < Math.min(this.cursor, this.exchanges.size()); i++) {
+            if (Arrays.equals(this.exchanges.get(i).getCommand(), data)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean sameHeader(byte[] a, byte[] b) {
+        if (a.length < 4 || b.length < 4) {
+            return false;
+        }
+        return a[0] == b[0] && a[1] == b[1] && a[2] == b[2] && a[3] == b[3];
+    }
+
+    private static void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Restarts the replay from the first recorded exchange.
+     */
+    public synchronized void rewind() {
+        this.cursor = 0;
+    }
+
+    /**
+     * @return number of commands that had no recorded response
+     */
+    public synchronized int getMissCount() {
+        return this.misses;
+    }
+}
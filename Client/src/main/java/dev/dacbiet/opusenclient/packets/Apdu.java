@@ -28,6 +28,17 @@ public class Apdu implements Packet {
         return this.data;
     }
 
+    /**
+     * Whether a command uses extended length (ISO/IEC 7816-3), i.e. a 3 byte Lc or Le starting with 00.
+     * A short command never has 00 right after its header but in a lone Le, which then ends the command.
+     *
+     * @param command command bytes
+     * @return true if extended length
+     */
+    public static boolean isExtendedLength(byte[] command) {
+        return command.length > 5 && command[4] == 0;
+    }
+
     @Override
     public byte[] serialize() {
         byte[] out = new byte[this.data.length];
@@ -37,7 +48,8 @@ public class Apdu implements Packet {
 
     @Override
     public void deserialize(ByteBuffer buf) {
-        byte length = buf.get();
+        // lengths are unsigned, up to 255
+        int length = buf.get() & 0xFF;
         byte[] data = new byte[length];
         buf.get(data, 0, length);
 
@@ -0,0 +1,148 @@
+package dev.dacbiet.opusenclient.packets;
+
+import java.util.Arrays;
+
+/**
+ * Apdu commands of a server packet, read in place from the packet bytes.
+ * Only the header fields and where each command starts are kept, commands are copied out on demand.
+ * Filled by {@link ApduCodec#decode(byte[], int, int)}, which reuses the same instance for every packet.
+ */
+public class ApduBatch {
+
+    private byte[] packet;
+    private byte type;
+    private byte cmd;
+    private int length;
+    private byte msgNum;
+    private int connectionId;
+    private byte connectionState;
+    private int[] offsets;
+    private int[] lengths;
+    private int count;
+
+    ApduBatch() {
+        this.offsets = new int[16];
+        this.lengths = new int[16];
+    }
+
+    /**
+     * Reads the header and locates every command.
+     *
+     * @param packet packet bytes, kept by reference
+     * @param offset start of the packet
+     * @param length length of the packet
+     * @throws PacketDeserializationException if the packet is truncated
+     */
+    void wrap(byte[] packet, int offset, int length) {
+        int end = offset + length;
+        if (offset < 0 || length < 0 || end > packet.length) {
+            throw new PacketDeserializationException("Packet out of bounds.");
+        }
+        if (length < 13) {
+            throw new PacketDeserializationException("Packet too short: " + length);
+        }
+
+        this.packet = packet;
+        this.type = packet[offset];
+        this.cmd = packet[offset + 1];
+        this.length = (packet[offset + 2] & 0xFF) << 8 | (packet[offset + 3] & 0xFF);
+        this.msgNum = packet[offset + 4];
+        this.connectionId = (packet[offset + 5] & 0xFF) << 24 | (packet[offset + 6] & 0xFF) << 16
+                | (packet[offset + 7] & 0xFF) << 8 | (packet[offset + 8] & 0xFF);
+        this.connectionState = packet[offset + 9];
+
+        // 2 reserved bytes are skipped
+        int count = packet[offset + 12] & 0xFF;
+        if (count > this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, count);
+            this.lengths = Arrays.copyOf(this.lengths, count);
+        }
+
+        int position = offset + 13;
+        for (int i = 0; i < count; i++) {
+            if (position >= end) {
+                throw new PacketDeserializationException("Truncated apdu " + i + " of " + count);
+            }
+
+            int apduLength = packet[position++] & 0xFF;
+            if (position + apduLength > end) {
+                throw new PacketDeserializationException("Truncated apdu " + i + " of " + count);
+            }
+
+            this.offsets[i] = position;
+            this.lengths[i] = apduLength;
+            position += apduLength;
+        }
+        this.count = count;
+    }
+
+    public byte getType() {
+        return this.type;
+    }
+
+    public byte getCmd() {
+        return this.cmd;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    public byte getMsgNum() {
+        return this.msgNum;
+    }
+
+    public int getConnectionId() {
+        return this.connectionId;
+    }
+
+    public byte getConnectionState() {
+        return this.connectionState;
+    }
+
+    public int getCommandCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the packet bytes the commands are read from
+     */
+    public byte[] getPacket() {
+        return this.packet;
+    }
+
+    /**
+     * @param index command index
+     * @return start of the command in {@link #getPacket()}
+     */
+    public int getCommandOffset(int index) {
+        this.checkIndex(index);
+        return this.offsets[index];
+    }
+
+    /**
+     * @param index command index
+     * @return length of the command
+     */
+    public int getCommandLength(int index) {
+        this.checkIndex(index);
+        return this.lengths[index];
+    }
+
+    /**
+     * Copies a command out of the packet, e.g. to hand it to the card.
+     *
+     * @param index command index
+     * @return command bytes
+     */
+    public byte[] copyCommand(int index) {
+        this.checkIndex(index);
+        return Arrays.copyOfRange(this.packet, this.offsets[index], this.offsets[index] + this.lengths[index]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException("Apdu " + index + " of " + this.count);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package dev.dacbiet.opusenclient.packets;
+
+import java.util.Arrays;
+
+/**
+ * Reads apdu command packets and writes the packets answering them, without intermediate copies.
+ * Commands are read once, in place, see {@link ApduBatch}. Responses are written straight into one
+ * buffer reused by every batch, so only the finished packet is allocated.
+ * Same layout as {@link ApduDataPacket} and {@link ApduResponseDataPacket}.
+ * <p>
+ * Not thread safe, meant to be owned by one session whose actions run one at a time.
+ * The batch returned by {@link #decode(byte[], int, int)} is only valid until the next call.
+ */
+public class ApduCodec {
+
+    private static final int HEADER_LENGTH = 5;
+    private static final int RESPONSE_HEADER_LENGTH = HEADER_LENGTH + 8;
+    private static final int TRAILER_LENGTH = 2;
+
+    private final ApduBatch batch;
+    private byte[] out;
+    private int position;
+    private int count;
+    private boolean writing;
+
+    public ApduCodec() {
+        this.batch = new ApduBatch();
+        this.out = new byte[512];
+    }
+
+    /**
+     * @param packet packet bytes
+     * @return the commands of the packet
+     * @throws PacketDeserializationException if the packet is truncated
+     */
+    public ApduBatch decode(byte[] packet) {
+        return this.decode(packet, 0, packet.length);
+    }
+
+    /**
+     * @param packet packet bytes, kept by reference until the next decode
+     * @param offset start of the packet
+     * @param length length of the packet
+     * @return the commands of the packet
+     * @throws PacketDeserializationException if the packet is truncated
+     */
+    public ApduBatch decode(byte[] packet, int offset, int length) {
+        this.batch.wrap(packet, offset, length);
+        return this.batch;
+    }
+
+    /**
+     * Starts the packet answering a batch, dropping any unfinished one.
+     *
+     * @param batch batch being answered, its header is echoed back
+     * @param isConnectionActive whether the connection stays active
+     */
+    public void beginResponse(ApduBatch batch, boolean isConnectionActive) {
+        this.beginResponse(batch.getType(), batch.getCmd(), batch.getMsgNum(), batch.getConnectionId(), isConnectionActive);
+    }
+
+    /**
+     * Starts a response packet, dropping any unfinished one.
+     *
+     * @param type packet type
+     * @param cmd packet command
+     * @param msgNum message number
+     * @param connectionId connection (operation) id
+     * @param isConnectionActive whether the connection stays active
+     */
+    public void beginResponse(byte type, byte cmd, byte msgNum, int connectionId, boolean isConnectionActive) {
+        byte[] out = this.out;
+        out[0] = type;
+        out[1] = cmd;
+        // length is set once finished
+        out[4] = msgNum;
+        out[5] = (byte) (connectionId >>> 24);
+        out[6] = (byte) (connectionId >>> 16);
+        out[7] = (byte) (connectionId >>> 8);
+        out[8] = (byte) connectionId;
+        out[9] = (byte) (isConnectionActive ? 1 : 0);
+        // reserved bytes (unused)
+        out[10] = 0;
+        out[11] = 0;
+
+        this.position = RESPONSE_HEADER_LENGTH;
+        this.count = 0;
+        this.writing = true;
+    }
+
+    /**
+     * Appends a response to the started packet.
+     *
+     * @param response response bytes
+     */
+    public void addResponse(byte[] response) {
+        this.addResponse(response, 0, response.length);
+    }
+
+    /**
+     * Appends a response to the started packet.
+     *
+     * @param response response bytes
+     * @param offset start of the response
+     * @param length length of the response
+     */
+    public void addResponse(byte[] response, int offset, int length) {
+        if (!this.writing) {
+            throw new IllegalStateException("No response packet started.");
+        }
+        if (length > 255 || this.count == 255) {
+            throw new PacketException("Response does not fit in the packet.");
+        }
+
+        this.ensureCapacity(this.position + 1 + length + TRAILER_LENGTH);
+        this.out[this.position++] = (byte) length;
+        System.arraycopy(response, offset, this.out, this.position, length);
+        this.position += length;
+        this.count++;
+    }
+
+    /**
+     * Finishes the started packet.
+     *
+     * @return packet bytes
+     */
+    public byte[] finishResponse() {
+        if (!this.writing) {
+            throw new IllegalStateException("No response packet started.");
+        }
+
+        byte[] out = this.out;
+        out[RESPONSE_HEADER_LENGTH - 1] = (byte) this.count;
+        out[this.position] = 0; // comment none
+        out[this.position + 1] = 0; // (non-zero means issued occurred)
+
+        int total = this.position + TRAILER_LENGTH;
+        int length = total - 4;
+        out[2] = (byte) (length >>> 8);
+        out[3] = (byte) length;
+
+        this.writing = false;
+        return Arrays.copyOf(out, total);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.out.length) {
+            this.out = Arrays.copyOf(this.out, Math.max(capacity, this.out.length * 2));
+        }
+    }
+}
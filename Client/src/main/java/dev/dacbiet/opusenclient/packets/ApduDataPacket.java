@@ -36,7 +36,7 @@ public class ApduDataPacket extends DataPacket {
         buf.get();
         buf.get();
 
-        byte count = buf.get();
+        int count = buf.get() & 0xFF;
         for (int i = 0; i < count; i++) {
             this.commands.add(new Apdu(buf));
         }
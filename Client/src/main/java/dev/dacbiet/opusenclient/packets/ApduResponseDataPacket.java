@@ -24,7 +24,14 @@ public class ApduResponseDataPacket extends DataPacket {
     public byte[] serialize() {
         int bufLen = 11;
 
+        // count and lengths are single unsigned bytes
+        if (this.responses.size() > 255) {
+            throw new PacketException("Too many responses for one packet: " + this.responses.size());
+        }
         for (Apdu apdu : this.responses) {
+            if (apdu.getData().length > 255) {
+                throw new PacketException("Response does not fit in the packet: " + apdu.getData().length + " bytes");
+            }
             bufLen += apdu.getData().length + 1;
         }
 
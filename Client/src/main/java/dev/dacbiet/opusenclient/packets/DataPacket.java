@@ -81,8 +81,8 @@ public class DataPacket implements Packet {
         this.type = buf.get();
         this.cmd = buf.get();
 
-        int lenMod = buf.get();
-        this.length = (short) (lenMod * 256 + buf.get());
+        int lenMod = buf.get() & 0xFF;
+        this.length = (short) (lenMod * 256 + (buf.get() & 0xFF));
         this.msgNum = buf.get();
         this.data = buf.array();
     }
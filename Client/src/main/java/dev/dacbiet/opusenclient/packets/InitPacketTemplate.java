@@ -0,0 +1,182 @@
+package dev.dacbiet.opusenclient.packets;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dev.dacbiet.opusenclient.Client.XSCP_VERSION;
+
+/**
+ * Encodes {@link InitConnectionPacket}s from sections encoded once per terminal name.
+ * Terminal, reader, OS and version do not change for the whole process, so the sections they make up are
+ * built once for each of the 16 combinations the server may demand. Only the message number, operation id
+ * and ATR are written per packet.
+ * <p>
+ * Thread safe, share one per terminal name, see {@link #forTerminal(String)}.
+ */
+public class InitPacketTemplate {
+
+    public static final int TYPE_OPERATION_ID = 1;
+    public static final int TYPE_ATR = 2;
+    public static final int TYPE_TERMINAL = 4;
+    public static final int TYPE_READER = 8;
+    public static final int TYPE_OS = 16;
+    public static final int TYPE_VERSION = 32;
+
+    private static final String OS = "Windows 10";
+
+    private static final Map<String, InitPacketTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    // constant sections (terminal, reader, OS, version), indexed by bits 2 to 5 of the type
+    private final byte[][] tails;
+    private final byte[] tailCounts;
+
+    /**
+     * @param terminal terminal name, also sent as the only reader
+     */
+    public InitPacketTemplate(String terminal) {
+        byte[][] sections = new byte[][] {
+                section(3, terminal.getBytes(StandardCharsets.UTF_8)),
+                section(4, terminal.getBytes(StandardCharsets.UTF_8)),
+                section(5, OS.getBytes(StandardCharsets.UTF_8)),
+                section(6, XSCP_VERSION.getBytes(StandardCharsets.UTF_8))
+        };
+
+        this.tails = new byte[16][];
+        this.tailCounts = new byte[16];
+        for (int bits = 0; bits < 16; bits++) {
+            int length = 0;
+            for (int i = 0; i < sections.length; i++) {
+                if ((bits & (1 << i)) != 0) {
+                    length += sections[i].length;
+                }
+            }
+
+            byte[] tail = new byte[length];
+            int position = 0;
+            for (int i = 0; i < sections.length; i++) {
+                if ((bits & (1 << i)) != 0) {
+                    System.arraycopy(sections[i], 0, tail, position, sections[i].length);
+                    position += sections[i].length;
+                    this.tailCounts[bits]++;
+                }
+            }
+            this.tails[bits] = tail;
+        }
+    }
+
+    /**
+     * Get the shared template of a terminal, created on first use.
+     *
+     * @param terminal terminal name
+     * @return the template
+     */
+    public static InitPacketTemplate forTerminal(String terminal) {
+        return TEMPLATES.computeIfAbsent(terminal, InitPacketTemplate::new);
+    }
+
+    /**
+     * Get the size of a packet.
+     *
+     * @param type fields demanded
+     * @param atr card ATR, only read if demanded
+     * @return packet size in bytes
+     */
+    public int size(int type, byte[] atr) {
+        int size = 8 + this.tails[(type >> 2) & 15].length;
+        if ((type & TYPE_OPERATION_ID) != 0) {
+            size += 6;
+        }
+        if ((type & TYPE_ATR) != 0) {
+            size += 2 + atr.length;
+        }
+        return size;
+    }
+
+    /**
+     * Encodes a packet.
+     *
+     * @param msgNum message number
+     * @param opId operation id
+     * @param type fields demanded
+     * @param atr card ATR, only read if demanded
+     * @return packet bytes
+     */
+    public byte[] encode(byte msgNum, int opId, int type, byte[] atr) {
+        byte[] out = new byte[this.size(type, atr)];
+        this.encode(out, 0, msgNum, opId, type, atr);
+        return out;
+    }
+
+    /**
+     * Encodes a packet into a buffer.
+     *
+     * @param out buffer, with at least {@link #size(int, byte[])} bytes from offset
+     * @param offset where the packet starts
+     * @param msgNum message number
+     * @param opId operation id
+     * @param type fields demanded
+     * @param atr card ATR, only read if demanded
+     * @return packet size in bytes
+     */
+    public int encode(byte[] out, int offset, byte msgNum, int opId, int type, byte[] atr) {
+        int size = this.size(type, atr);
+        if ((type & TYPE_ATR) != 0 && atr.length > 255) {
+            throw new PacketException("ATR too long: " + atr.length);
+        }
+        if (offset < 0 || offset + size > out.length) {
+            throw new IndexOutOfBoundsException("Packet does not fit in the buffer.");
+        }
+
+        int dataLen = size - 4;
+        int tailBits = (type >> 2) & 15;
+        int position = offset;
+        out[position++] = 48;
+        out[position++] = -49;
+        out[position++] = (byte) (dataLen / 256);
+        out[position++] = (byte) dataLen;
+        out[position++] = msgNum;
+
+        int countPosition = position++;
+        int count = this.tailCounts[tailBits];
+
+        if ((type & TYPE_OPERATION_ID) != 0) {
+            out[position++] = 1;
+            out[position++] = 4;
+            out[position++] = (byte) (opId >>> 24);
+            out[position++] = (byte) (opId >>> 16);
+            out[position++] = (byte) (opId >>> 8);
+            out[position++] = (byte) opId;
+            count++;
+        }
+
+        if ((type & TYPE_ATR) != 0) {
+            out[position++] = 2;
+            out[position++] = (byte) atr.length;
+            System.arraycopy(atr, 0, out, position, atr.length);
+            position += atr.length;
+            count++;
+        }
+
+        byte[] tail = this.tails[tailBits];
+        System.arraycopy(tail, 0, out, position, tail.length);
+        position += tail.length;
+
+        out[countPosition] = (byte) count;
+        out[position++] = 0; // no comments
+        out[position] = 0; // always zero
+        return size;
+    }
+
+    private static byte[] section(int tag, byte[] value) {
+        if (value.length > 255) {
+            throw new IllegalArgumentException("Init field too long: " + value.length);
+        }
+
+        byte[] section = new byte[2 + value.length];
+        section[0] = (byte) tag;
+        section[1] = (byte) value.length;
+        System.arraycopy(value, 0, section, 2, value.length);
+        return section;
+    }
+}
@@ -0,0 +1,186 @@
+package dev.dacbiet.opusenclient.rules;
+
+import java.util.Arrays;
+
+/**
+ * Declarative rewrite of one kind of apdu command, matched on its instruction byte (INS).
+ * A rule either edits the command before it is sent to the card ({@link #setP1(int)}),
+ * or replaces the card response given to the server ({@link #respond(byte[])}, {@link #respondPrevious()}).
+ * Conditions are all optional: P1 of the command, INS of the previous command, and how many secure sessions
+ * were opened and closed so far (counting the current command).
+ * <p>
+ * Configured with the chained setters, then shared read only once added to an {@link ApduRuleSet}.
+ */
+public class ApduRule {
+
+    public static final int ANY = -1;
+
+    enum Action {
+        SET_P1,
+        RESPOND,
+        RESPOND_PREVIOUS
+    }
+
+    private final String name;
+    private final int ins;
+    private int p1;
+    private int[] previousIns;
+    private int openCount;
+    private int closeCount;
+    private int maxHits;
+    private Action action;
+    private int newP1;
+    private byte[] response;
+
+    /**
+     * @param name name used in hit counts and configuration
+     * @param ins instruction byte matched, 0 to 255
+     */
+    public ApduRule(String name, int ins) {
+        this.name = name;
+        this.ins = checkByte(ins);
+        this.p1 = ANY;
+        this.previousIns = new int[0];
+        this.openCount = ANY;
+        this.closeCount = ANY;
+        this.maxHits = ANY;
+    }
+
+    /**
+     * Only matches commands with this P1.
+     */
+    public ApduRule whenP1(int p1) {
+        this.p1 = checkByte(p1);
+        return this;
+    }
+
+    /**
+     * Only matches commands right after one of these instructions.
+     */
+    public ApduRule afterIns(int... previousIns) {
+        for (int ins : previousIns) {
+            checkByte(ins);
+        }
+        this.previousIns = Arrays.copyOf(previousIns, previousIns.length);
+        return this;
+    }
+
+    /**
+     * Only matches once this many secure sessions were opened and closed, {@link #ANY} to ignore either.
+     */
+    public ApduRule inSecureSession(int openCount, int closeCount) {
+        this.openCount = openCount;
+        this.closeCount = closeCount;
+        return this;
+    }
+
+    /**
+     * Stops matching after this many hits in a session.
+     */
+    public ApduRule maxHits(int maxHits) {
+        this.maxHits = maxHits;
+        return this;
+    }
+
+    /**
+     * Sets P1 of the command before it is sent.
+     */
+    public ApduRule setP1(int p1) {
+        this.action = Action.SET_P1;
+        this.newP1 = checkByte(p1);
+        return this;
+    }
+
+    /**
+     * Answers the server with these bytes instead of the card response.
+     */
+    public ApduRule respond(byte[] response) {
+        this.action = Action.RESPOND;
+        this.response = Arrays.copyOf(response, response.length);
+        return this;
+    }
+
+    /**
+     * Answers the server with the card response to the previous command.
+     */
+    public ApduRule respondPrevious() {
+        this.action = Action.RESPOND_PREVIOUS;
+        this.response = null;
+        return this;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getIns() {
+        return this.ins;
+    }
+
+    /**
+     * @return true if the rule edits commands, false if it replaces responses
+     */
+    public boolean isPreProcess() {
+        return this.action == Action.SET_P1;
+    }
+
+    Action getAction() {
+        return this.action;
+    }
+
+    int getP1() {
+        return this.p1;
+    }
+
+    int[] getPreviousIns() {
+        return this.previousIns;
+    }
+
+    int getOpenCount() {
+        return this.openCount;
+    }
+
+    int getCloseCount() {
+        return this.closeCount;
+    }
+
+    int getMaxHits() {
+        return this.maxHits;
+    }
+
+    int getNewP1() {
+        return this.newP1;
+    }
+
+    byte[] getResponse() {
+        return this.response;
+    }
+
+    /**
+     * @return a copy, so the rule can still be changed without affecting compiled sets
+     */
+    ApduRule copy() {
+        ApduRule copy = new ApduRule(this.name, this.ins);
+        copy.p1 = this.p1;
+        copy.previousIns = this.previousIns;
+        copy.openCount = this.openCount;
+        copy.closeCount = this.closeCount;
+        copy.maxHits = this.maxHits;
+        copy.action = this.action;
+        copy.newP1 = this.newP1;
+        copy.response = this.response;
+        return copy;
+    }
+
+    private static int checkByte(int value) {
+        if (value < 0 || value > 255) {
+            throw new IllegalArgumentException("Not a byte value: " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "ApduRule{" + this.name + ", ins=" + String.format("%02X", this.ins) + ", " + this.action + "}";
+    }
+}
@@ -0,0 +1,148 @@
+package dev.dacbiet.opusenclient.rules;
+
+import dev.dacbiet.opusenclient.ApduHistory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Applies an {@link ApduRuleSet} to the commands of one session and counts how often each rule applied.
+ * Not thread safe, like the processor owning it.
+ */
+public class ApduRuleEngine {
+
+    private final ApduRuleSet rules;
+    private final long[] hits;
+
+    public ApduRuleEngine(ApduRuleSet rules) {
+        this.rules = rules;
+        this.hits = new long[rules.size()];
+    }
+
+    public ApduRuleSet getRules() {
+        return this.rules;
+    }
+
+    /**
+     * Edits a command before it is sent to the card.
+     *
+     * @param command apdu command bytes, edited in place
+     */
+    public void preProcess(byte[] command) {
+        // P1 edits are the only ones, they need P1
+        if (command.length < 3) {
+            return;
+        }
+
+        int[] candidates = this.rules.getPreProcessRules(command[1] & 0xFF);
+        if (candidates == null) {
+            return;
+        }
+
+        for (int index : candidates) {
+            ApduRule rule = this.rules.rule(index);
+            if (this.hitsLeft(index, rule) && (rule.getP1() == ApduRule.ANY || (command[2] & 0xFF) == rule.getP1())) {
+                command[2] = (byte) rule.getNewP1();
+                this.hits[index]++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the response to give to the server instead of the card's.
+     * The command must already be the last exchange of the history.
+     *
+     * @param command apdu command bytes
+     * @param history exchanges of the session, including this one
+     * @param openCount secure sessions opened so far
+     * @param closeCount secure sessions closed so far
+     * @return the replacement response, or null to keep the card response
+     */
+    public byte[] process(byte[] command, ApduHistory history, int openCount, int closeCount) {
+        if (command.length < 2) {
+            return null;
+        }
+
+        int[] candidates = this.rules.getProcessRules(command[1] & 0xFF);
+        if (candidates == null) {
+            return null;
+        }
+
+        for (int index : candidates) {
+            ApduRule rule = this.rules.rule(index);
+            if (!this.hitsLeft(index, rule) || !matches(rule, command, history, openCount, closeCount)) {
+                continue;
+            }
+
+            this.hits[index]++;
+            if (rule.getAction() == ApduRule.Action.RESPOND_PREVIOUS) {
+                return history.copyResponse(1);
+            }
+            return Arrays.copyOf(rule.getResponse(), rule.getResponse().length);
+        }
+        return null;
+    }
+
+    private boolean hitsLeft(int index, ApduRule rule) {
+        return rule.getMaxHits() == ApduRule.ANY || this.hits[index] < rule.getMaxHits();
+    }
+
+    private static boolean matches(ApduRule rule, byte[] command, ApduHistory history, int openCount, int closeCount) {
+        if (rule.getP1() != ApduRule.ANY && (command.length < 3 || (command[2] & 0xFF) != rule.getP1())) {
+            return false;
+        }
+        if (rule.getOpenCount() != ApduRule.ANY && rule.getOpenCount() != openCount) {
+            return false;
+        }
+        if (rule.getCloseCount() != ApduRule.ANY && rule.getCloseCount() != closeCount) {
+            return false;
+        }
+
+        int[] previousIns = rule.getPreviousIns();
+        if (previousIns.length > 0 || rule.getAction() == ApduRule.Action.RESPOND_PREVIOUS) {
+            if (history.size() < 2) {
+                return false;
+            }
+        }
+        if (previousIns.length > 0) {
+            if (history.getCommandLength(1) < 2) {
+                return false;
+            }
+
+            int previous = history.getCommandByte(1, 1) & 0xFF;
+            for (int ins : previousIns) {
+                if (ins == previous) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param name rule name
+     * @return how often the rule applied in this session
+     */
+    public long getHits(String name) {
+        for (int i = 0; i < this.rules.size(); i++) {
+            if (this.rules.rule(i).getName().equals(name)) {
+                return this.hits[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return how often each rule applied in this session, in rule order
+     */
+    public Map<String, Long> getHitCounts() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (int i = 0; i < this.rules.size(); i++) {
+            out.put(this.rules.rule(i).getName(), this.hits[i]);
+        }
+        return out;
+    }
+}
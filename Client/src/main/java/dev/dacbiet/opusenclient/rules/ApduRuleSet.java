@@ -0,0 +1,240 @@
+package dev.dacbiet.opusenclient.rules;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static dev.dacbiet.opusenclient.ApduCommandProcessor.*;
+
+/**
+ * Ordered rules compiled to dispatch tables indexed by instruction byte, so commands no rule is about cost
+ * one array read. When several rules match a command, the first one added applies.
+ * Immutable, share one set between sessions, each session counting hits in its own {@link ApduRuleEngine}.
+ * <p>
+ * Rules can be loaded from properties:
+ * <pre>
+ * rules=ratify,fake-write
+ * rule.ratify.ins=8E
+ * rule.ratify.p1=00
+ * rule.ratify.setP1=80
+ * rule.fake-write.ins=C0
+ * rule.fake-write.afterIns=D2,DC
+ * rule.fake-write.openCount=2
+ * rule.fake-write.closeCount=1
+ * rule.fake-write.respond=6985
+ * </pre>
+ * Bytes are hex. {@code respond=previous} answers with the previous card response, and {@code maxHits} limits
+ * how often a rule applies in a session.
+ */
+public class ApduRuleSet {
+
+    private static volatile ApduRuleSet defaults;
+
+    private final ApduRule[] rules;
+    private final int[][] preProcessRules;
+    private final int[][] processRules;
+
+    /**
+     * @param rules rules, in priority order
+     * @throws IllegalArgumentException if a rule has no action or a name is used twice
+     */
+    public ApduRuleSet(List<ApduRule> rules) {
+        this.rules = new ApduRule[rules.size()];
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < rules.size(); i++) {
+            ApduRule rule = rules.get(i).copy();
+            if (rule.getAction() == null) {
+                throw new IllegalArgumentException("Rule " + rule.getName() + " does nothing.");
+            }
+            if (!names.add(rule.getName())) {
+                throw new IllegalArgumentException("Rule " + rule.getName() + " is defined twice.");
+            }
+            this.rules[i] = rule;
+        }
+
+        this.preProcessRules = new int[256][];
+        this.processRules = new int[256][];
+        for (int i = 0; i < this.rules.length; i++) {
+            ApduRule rule = this.rules[i];
+            int[][] table = rule.isPreProcess() ? this.preProcessRules : this.processRules;
+            int[] entry = table[rule.getIns()];
+            entry = entry == null ? new int[1] : Arrays.copyOf(entry, entry.length + 1);
+            entry[entry.length - 1] = i;
+            table[rule.getIns()] = entry;
+        }
+    }
+
+    /**
+     * @return a set without rules
+     */
+    public static ApduRuleSet empty() {
+        return new ApduRuleSet(new ArrayList<>());
+    }
+
+    /**
+     * The workarounds the server needs from every card:
+     * closing secure sessions with immediate ratification, answering 69 85 to the GET RESPONSE following
+     * a write or update in the second secure session, and answering the GET RESPONSE following the second
+     * close with the close response.
+     *
+     * @return the default rules, shared
+     */
+    public static ApduRuleSet defaults() {
+        ApduRuleSet set = defaults;
+        if (set == null) {
+            set = createDefaults();
+            defaults = set;
+        }
+        return set;
+    }
+
+    private static ApduRuleSet createDefaults() {
+        List<ApduRule> rules = new ArrayList<>();
+        rules.add(new ApduRule("immediate-ratify", CLS_CLOSE_SECURE_SESSION & 0xFF)
+                .whenP1(0)
+                .setP1(P1_IMMEDIATE_RATIFY & 0xFF));
+        rules.add(new ApduRule("fake-write-response", CLS_GET_RESPONSE & 0xFF)
+                .afterIns(CLS_WRITE_RECORD & 0xFF, CLS_UPDATE_RECORD & 0xFF)
+                .inSecureSession(2, 1)
+                .respond(FAKE_UPDATE_WRITE_RESPONSE));
+        rules.add(new ApduRule("close-response", CLS_GET_RESPONSE & 0xFF)
+                .afterIns(CLS_CLOSE_SECURE_SESSION & 0xFF)
+                .inSecureSession(2, 2)
+                .respondPrevious());
+        return new ApduRuleSet(rules);
+    }
+
+    /**
+     * Loads rules from a properties file, see the class description for the format.
+     *
+     * @param file properties file
+     * @return the rules
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    public static ApduRuleSet load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return load(properties);
+    }
+
+    /**
+     * Loads rules from properties, see the class description for the format.
+     *
+     * @param properties properties
+     * @return the rules
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    public static ApduRuleSet load(Properties properties) {
+        List<ApduRule> rules = new ArrayList<>();
+        String names = properties.getProperty("rules", "").trim();
+        if (names.isEmpty()) {
+            return new ApduRuleSet(rules);
+        }
+
+        for (String name : names.split(",")) {
+            name = name.trim();
+            String prefix = "rule." + name + ".";
+            String ins = properties.getProperty(prefix + "ins");
+            if (ins == null) {
+                throw new IllegalArgumentException("Rule " + name + " has no ins.");
+            }
+
+            ApduRule rule = new ApduRule(name, parseByte(ins));
+            String value = properties.getProperty(prefix + "p1");
+            if (value != null) {
+                rule.whenP1(parseByte(value));
+            }
+
+            value = properties.getProperty(prefix + "afterIns");
+            if (value != null) {
+                String[] parts = value.split(",");
+                int[] previous = new int[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    previous[i] = parseByte(parts[i]);
+                }
+                rule.afterIns(previous);
+            }
+
+            rule.inSecureSession(parseCount(properties.getProperty(prefix + "openCount")),
+                    parseCount(properties.getProperty(prefix + "closeCount")));
+            rule.maxHits(parseCount(properties.getProperty(prefix + "maxHits")));
+
+            String setP1 = properties.getProperty(prefix + "setP1");
+            String respond = properties.getProperty(prefix + "respond");
+            if ((setP1 == null) == (respond == null)) {
+                throw new IllegalArgumentException("Rule " + name + " needs one of setP1 or respond.");
+            }
+            if (setP1 != null) {
+                rule.setP1(parseByte(setP1));
+            } else if (respond.trim().equalsIgnoreCase("previous")) {
+                rule.respondPrevious();
+            } else {
+                rule.respond(parseHex(respond));
+            }
+            rules.add(rule);
+        }
+        return new ApduRuleSet(rules);
+    }
+
+    public int size() {
+        return this.rules.length;
+    }
+
+    /**
+     * @param index rule index
+     * @return a copy of the rule
+     */
+    public ApduRule getRule(int index) {
+        return this.rules[index].copy();
+    }
+
+    ApduRule rule(int index) {
+        return this.rules[index];
+    }
+
+    /**
+     * @return indexes of the rules editing commands with this instruction, null if none
+     */
+    int[] getPreProcessRules(int ins) {
+        return this.preProcessRules[ins];
+    }
+
+    /**
+     * @return indexes of the rules replacing responses to commands with this instruction, null if none
+     */
+    int[] getProcessRules(int ins) {
+        return this.processRules[ins];
+    }
+
+    private static int parseByte(String hex) {
+        return Integer.parseInt(hex.trim(), 16);
+    }
+
+    private static int parseCount(String value) {
+        return value == null ? ApduRule.ANY : Integer.parseInt(value.trim());
+    }
+
+    private static byte[] parseHex(String hex) {
+        hex = hex.replaceAll("\\s", "");
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd hex length: " + hex);
+        }
+
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,209 @@
+package dev.dacbiet.opusenclient.stats;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where card time goes: card latency per instruction byte (INS), status words answered,
+ * time spent processing commands, and how long secure sessions stay open (from the open command
+ * being sent to the close response).
+ * <p>
+ * Each session records to its own stats, which also add everything to a parent shared by all sessions
+ * (see {@link #setParent(ApduStats)}), so both can be exported with {@link #toJson()}.
+ * Recording is lock-free. The secure session span is tracked per stats, so only one session
+ * should record exchanges to a given stats directly.
+ */
+public class ApduStats {
+
+    private static final byte INS_OPEN_SECURE_SESSION = -118; // 0x8A
+    private static final byte INS_CLOSE_SECURE_SESSION = -114; // 0x8E
+    private static final int NO_STATUS = -1;
+
+    private final AtomicReferenceArray<LatencyHistogram> cardLatency;
+    private final Map<Integer, LongAdder> statusWords;
+    private final LatencyHistogram processing;
+    private final LatencyHistogram secureSessions;
+    private final AtomicLong exchanges;
+    private volatile ApduStats parent;
+    private long secureSessionStart;
+
+    public ApduStats() {
+        this.cardLatency = new AtomicReferenceArray<>(256);
+        this.statusWords = new ConcurrentHashMap<>();
+        this.processing = new LatencyHistogram();
+        this.secureSessions = new LatencyHistogram();
+        this.exchanges = new AtomicLong();
+        this.parent = null;
+        this.secureSessionStart = -1;
+    }
+
+    /**
+     * @param parent stats also given everything recorded here, usually shared by every session, or null
+     */
+    public void setParent(ApduStats parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Records a command sent to the card and its response.
+     *
+     * @param command apdu command bytes
+     * @param response response bytes, null if the card did not answer
+     * @param startNanos {@link System#nanoTime()} before sending
+     * @param endNanos {@link System#nanoTime()} once answered
+     */
+    public void recordExchange(byte[] command, byte[] response, long startNanos, long endNanos) {
+        if (command == null || command.length < 2) {
+            return;
+        }
+
+        int status = NO_STATUS;
+        if (response != null && response.length >= 2) {
+            status = ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+        }
+        this.record(command[1] & 0xFF, status, endNanos - startNanos);
+
+        // chaining cards answer 61 xx and hand the data over with GET RESPONSE
+        if (command[1] == INS_OPEN_SECURE_SESSION && (status == 0x9000 || (status >>> 8) == 0x61)) {
+            this.secureSessionStart = startNanos;
+        } else if (command[1] == INS_CLOSE_SECURE_SESSION && this.secureSessionStart != -1) {
+            this.recordSecureSession(endNanos - this.secureSessionStart);
+            this.secureSessionStart = -1;
+        }
+    }
+
+    private void record(int ins, int status, long nanos) {
+        LatencyHistogram histogram = this.cardLatency.get(ins);
+        if (histogram == null) {
+            this.cardLatency.compareAndSet(ins, null, new LatencyHistogram());
+            histogram = this.cardLatency.get(ins);
+        }
+        histogram.record(nanos);
+        this.statusWords.computeIfAbsent(status, s -> new LongAdder()).increment();
+        this.exchanges.incrementAndGet();
+
+        ApduStats parent = this.parent;
+        if (parent != null) {
+            parent.record(ins, status, nanos);
+        }
+    }
+
+    private void recordSecureSession(long nanos) {
+        this.secureSessions.record(nanos);
+
+        ApduStats parent = this.parent;
+        if (parent != null) {
+            parent.recordSecureSession(nanos);
+        }
+    }
+
+    /**
+     * Records the time spent editing a command and its response, outside of the card.
+     *
+     * @param nanos duration
+     */
+    public void recordProcessing(long nanos) {
+        this.processing.record(nanos);
+
+        ApduStats parent = this.parent;
+        if (parent != null) {
+            parent.recordProcessing(nanos);
+        }
+    }
+
+    public long getExchangeCount() {
+        return this.exchanges.get();
+    }
+
+    /**
+     * @param ins instruction byte
+     * @return card latency of the commands with this instruction, null if none was sent
+     */
+    public LatencyHistogram getCardLatency(byte ins) {
+        return this.cardLatency.get(ins & 0xFF);
+    }
+
+    /**
+     * @param status status word, for instance 0x9000
+     * @return how many responses ended with it
+     */
+    public long getStatusWordCount(int status) {
+        LongAdder adder = this.statusWords.get(status);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public LatencyHistogram getProcessing() {
+        return this.processing;
+    }
+
+    /**
+     * @return secure session spans, from sending the open command to the close response
+     */
+    public LatencyHistogram getSecureSessions() {
+        return this.secureSessions;
+    }
+
+    /**
+     * Forgets everything recorded, for instance after a warmup. Not meant to be called while recording.
+     */
+    public void reset() {
+        for (int i = 0; i < 256; i++) {
+            this.cardLatency.set(i, null);
+        }
+        this.statusWords.clear();
+        this.processing.reset();
+        this.secureSessions.reset();
+        this.exchanges.set(0);
+        this.secureSessionStart = -1;
+    }
+
+    /**
+     * Exports the stats, INS and status words in hex, durations in nanoseconds:
+     * <pre>
+     * {"exchanges":12,"cardLatency":{"B2":{"count":8,"meanNanos":..,"p50Nanos":..,"p90Nanos":..,"p99Nanos":..,"maxNanos":..}},
+     *  "statusWords":{"9000":11,"6A82":1},"processing":{..},"secureSessions":{..}}
+     * </pre>
+     * A missing response is counted as status word "none".
+     *
+     * @return stats as JSON
+     */
+    public String toJson() {
+        StringBuilder out = new StringBuilder(512);
+        out.append("{\"exchanges\":").append(this.exchanges.get());
+
+        out.append(",\"cardLatency\":{");
+        boolean first = true;
+        for (int ins = 0; ins < 256; ins++) {
+            LatencyHistogram histogram = this.cardLatency.get(ins);
+            if (histogram == null) {
+                continue;
+            }
+            out.append(first ? "" : ",").append('"').append(String.format("%02X", ins)).append("\":");
+            histogram.appendJson(out);
+            first = false;
+        }
+
+        out.append("},\"statusWords\":{");
+        first = true;
+        for (Map.Entry<Integer, LongAdder> entry : new TreeMap<>(this.statusWords).entrySet()) {
+            String status = entry.getKey() == NO_STATUS ? "none" : String.format("%04X", entry.getKey());
+            out.append(first ? "" : ",").append('"').append(status).append("\":").append(entry.getValue().sum());
+            first = false;
+        }
+
+        out.append("},\"processing\":");
+        this.processing.appendJson(out);
+        out.append(",\"secureSessions\":");
+        this.secureSessions.appendJson(out);
+        return out.append('}').toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.toJson();
+    }
+}
@@ -0,0 +1,34 @@
+package dev.dacbiet.opusenclient.stats;
+
+import dev.dacbiet.opusenclient.NfcHandler;
+
+/**
+ * Records how long another handler takes to answer every APDU command, and what it answers.
+ */
+public class TimedNfcHandler implements NfcHandler {
+
+    private final NfcHandler handler;
+    private final ApduStats stats;
+
+    /**
+     * @param handler handler talking to the card
+     * @param stats stats of the session the handler belongs to
+     */
+    public TimedNfcHandler(NfcHandler handler, ApduStats stats) {
+        this.handler = handler;
+        this.stats = stats;
+    }
+
+    @Override
+    public byte[] send(byte[] data) {
+        long start = System.nanoTime();
+        byte[] resp = this.handler.send(data);
+        this.stats.recordExchange(data, resp, start, System.nanoTime());
+        return resp;
+    }
+
+    @Override
+    public boolean isExtendedLengthSupported() {
+        return this.handler.isExtendedLengthSupported();
+    }
+}
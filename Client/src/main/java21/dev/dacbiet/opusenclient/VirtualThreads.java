@@ -0,0 +1,42 @@
+package dev.dacbiet.opusenclient;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads.
+ * This is the Java 21 version, loaded from the multi-release jar.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if virtual threads can be used on the running JVM
+     */
+    public static boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Creates a factory of virtual threads.
+     *
+     * @param name prefix for the thread names
+     * @return thread factory
+     */
+    public static ThreadFactory factory(String name) {
+        return Thread.ofVirtual().name(name + "-", 0).factory();
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread per task.
+     *
+     * @param name prefix for the thread names
+     * @return executor
+     */
+    public static ExecutorService newExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(factory(name));
+    }
+}
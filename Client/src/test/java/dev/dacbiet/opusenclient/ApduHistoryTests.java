@@ -0,0 +1,107 @@
+package dev.dacbiet.opusenclient;
+
+import dev.dacbiet.opusenclient.journal.JournalRecord;
+import dev.dacbiet.opusenclient.journal.SessionJournal;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ApduHistoryTests {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] bytes(Random random, int length) {
+        byte[] out = new byte[length];
+        random.nextBytes(out);
+        return out;
+    }
+
+    @Test
+    @DisplayName("Ensure only the last exchanges are kept, newest first")
+    void keepsLastExchanges() {
+        ApduHistory history = new ApduHistory(4, 1024);
+        for (int i = 0; i < 10; i++) {
+            history.add(new byte[] { 0, (byte) i }, new byte[] { (byte) i, -112, 0 });
+        }
+
+        assertEquals(4, history.size());
+        assertEquals(10, history.getTotalCount());
+        assertEquals(9, history.getCommandByte(0, 1));
+        assertEquals(6, history.getCommandByte(3, 1));
+        assertArrayEquals(new byte[] { 8, -112, 0 }, history.copyResponse(1));
+    }
+
+    @Test
+    @DisplayName("Ensure exchanges kept are intact while the arena wraps")
+    void arenaWraps() {
+        Random random = new Random(42);
+        ApduHistory history = new ApduHistory(16, 300);
+        List<byte[][]> added = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+            byte[] command = bytes(random, 1 + random.nextInt(40));
+            byte[] response = bytes(random, random.nextInt(60));
+            history.add(command, response);
+            added.add(new byte[][] { command, response });
+
+            assertTrue(history.size() >= 1 && history.size() <= 16);
+            for (int age = 0; age < history.size(); age++) {
+                byte[][] expected = added.get(added.size() - 1 - age);
+                assertArrayEquals(expected[0], history.copyCommand(age));
+                assertArrayEquals(expected[1], history.copyResponse(age));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure exchanges are written to the journal when asked")
+    void spillToJournal() throws IOException {
+        Path file = this.dir.resolve("history.journal");
+        ApduHistory history = new ApduHistory(2, 64);
+        try (SessionJournal journal = SessionJournal.create(file, 4096)) {
+            history.add(new byte[] { 0, -92 }, new byte[] { -112, 0 });
+            history.setJournal(journal, 3);
+            history.add(new byte[] { 0, -78, 1 }, new byte[] { 1, -112, 0 });
+            // bigger than the arena, journaled whole
+            history.add(new byte[] { 0, -80 }, new byte[100]);
+        }
+
+        List<JournalRecord> records = SessionJournal.read(file);
+        assertEquals(2, records.size());
+        assertEquals(SessionJournal.APDU_EXCHANGE, records.get(0).getType());
+        assertEquals(3, records.get(0).getSessionId());
+        assertArrayEquals(new byte[] { 0, 3, 0, -78, 1, 1, -112, 0 }, records.get(0).getPayload());
+        assertEquals(2 + 2 + 100, records.get(1).getPayload().length);
+
+        // the clipped exchange fills the whole arena
+        assertEquals(1, history.size());
+        assertEquals(62, history.getCommandLength(0) + history.getResponseLength(0));
+    }
+
+    @Test
+    @DisplayName("Ensure a client writes the history of its session to the journal")
+    void clientHistoryJournal() throws IOException {
+        Path file = this.dir.resolve("client.journal");
+        Client client = new Client(new ConnectionInfo("https://localhost/hub", "1", "", "https://localhost/svh"));
+        try (SessionJournal journal = SessionJournal.create(file, 4096)) {
+            client.setHistoryJournal(journal);
+            client.getApduCommandProcessor().process(new byte[] { 0, -78, 1 }, new byte[] { 1, -112, 0 });
+        }
+
+        List<JournalRecord> records = SessionJournal.read(file);
+        assertEquals(1, records.size());
+        assertEquals(SessionJournal.APDU_EXCHANGE, records.get(0).getType());
+        assertEquals(client.getId(), records.get(0).getSessionId());
+    }
+}
@@ -0,0 +1,192 @@
+package dev.dacbiet.opusenclient;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.smartcardio.ATR;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReaderManagerTests {
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    @DisplayName("Ensure readers plugged in later are watched and a card staying in its reader gets one session")
+    void hotPlug() throws InterruptedException {
+        FakeTerminals terminals = new FakeTerminals();
+        AtomicInteger asked = new AtomicInteger();
+        FakeTerminal reader = new FakeTerminal("reader", true);
+
+        try (SessionManager sessionManager = new SessionManager(1);
+             ReaderManager readerManager = new ReaderManager(terminals, sessionManager, readerName -> {
+                 asked.incrementAndGet();
+                 return null;
+             })) {
+            // started without any reader attached
+            readerManager.start();
+            Thread.sleep(100);
+            terminals.readers.add(reader);
+            // the card is let go once the listener turned it down
+            waitFor(() -> reader.disconnected.get() == 1);
+            assertEquals(1, asked.get());
+
+            // polls timing out do not report the card again
+            Thread.sleep(200);
+            assertEquals(1, asked.get());
+
+            reader.present = false;
+            Thread.sleep(100);
+            reader.present = true;
+            waitFor(() -> asked.get() == 2);
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure no session is asked for a card that cannot be connected to")
+    void connectFailure() throws InterruptedException {
+        FakeTerminals terminals = new FakeTerminals();
+        AtomicInteger asked = new AtomicInteger();
+        FakeTerminal reader = new FakeTerminal("reader", true);
+        reader.connectable = false;
+        terminals.readers.add(reader);
+
+        try (SessionManager sessionManager = new SessionManager(1);
+             ReaderManager readerManager = new ReaderManager(terminals, sessionManager, readerName -> {
+                 asked.incrementAndGet();
+                 return null;
+             })) {
+            readerManager.start();
+            waitFor(() -> reader.connects.get() == 1);
+            Thread.sleep(200);
+            assertEquals(1, reader.connects.get());
+            assertEquals(0, asked.get());
+        }
+    }
+
+    /**
+     * Reader states are never updated, like {@link CardTerminals#waitForChange(long)} timing out.
+     */
+    private static class FakeTerminals extends CardTerminals {
+        private final List<CardTerminal> readers = new CopyOnWriteArrayList<>();
+
+        @Override
+        public List<CardTerminal> list(State state) {
+            return state == State.ALL ? new ArrayList<>(this.readers) : new ArrayList<>();
+        }
+
+        @Override
+        public boolean waitForChange(long timeout) throws CardException {
+            if (this.readers.isEmpty()) {
+                throw new IllegalStateException("no terminals");
+            }
+
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new CardException(e);
+            }
+            return false;
+        }
+    }
+
+    private static class FakeTerminal extends CardTerminal {
+        private final String name;
+        private final AtomicInteger connects = new AtomicInteger();
+        private final AtomicInteger disconnected = new AtomicInteger();
+        private volatile boolean present;
+        private volatile boolean connectable;
+
+        private FakeTerminal(String name, boolean present) {
+            this.name = name;
+            this.present = present;
+            this.connectable = true;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public Card connect(String protocol) throws CardException {
+            this.connects.incrementAndGet();
+            if (!this.connectable) {
+                throw new CardException("unable to connect");
+            }
+
+            return new Card() {
+                @Override
+                public ATR getATR() {
+                    return new ATR(new byte[] { 59, 0 });
+                }
+
+                @Override
+                public String getProtocol() {
+                    return "T=1";
+                }
+
+                @Override
+                public CardChannel getBasicChannel() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public CardChannel openLogicalChannel() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void beginExclusive() {
+                }
+
+                @Override
+                public void endExclusive() {
+                }
+
+                @Override
+                public byte[] transmitControlCommand(int controlCode, byte[] command) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void disconnect(boolean reset) {
+                    FakeTerminal.this.disconnected.incrementAndGet();
+                }
+            };
+        }
+
+        @Override
+        public boolean isCardPresent() {
+            return this.present;
+        }
+
+        @Override
+        public boolean waitForCardPresent(long timeout) {
+            return this.present;
+        }
+
+        @Override
+        public boolean waitForCardAbsent(long timeout) {
+            return !this.present;
+        }
+    }
+}
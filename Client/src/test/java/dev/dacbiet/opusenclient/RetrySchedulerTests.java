@@ -0,0 +1,138 @@
+package dev.dacbiet.opusenclient;
+
+import dev.dacbiet.opusenclient.actions.Action;
+import dev.dacbiet.opusenclient.actions.RetryPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetrySchedulerTests {
+
+    private ScheduledExecutorService executor;
+    private List<Action> requeued;
+    private RetryScheduler scheduler;
+
+    @BeforeEach
+    void setup() {
+        this.executor = Executors.newSingleThreadScheduledExecutor();
+        this.requeued = new CopyOnWriteArrayList<>();
+        this.scheduler = new RetryScheduler(this.executor, this.requeued::add);
+    }
+
+    @AfterEach
+    void teardown() {
+        this.executor.shutdownNow();
+    }
+
+    private static Action failing(RetryPolicy policy) {
+        return new Action(null) {
+            @Override
+            public boolean exec() {
+                return false;
+            }
+
+            @Override
+            public RetryPolicy getRetryPolicy() {
+                return policy;
+            }
+        };
+    }
+
+    @Test
+    @DisplayName("Ensure delays grow by the multiplier up to the max delay")
+    void backoff() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 2.0, 0, 0);
+        long[] expected = new long[] { 100, 200, 400, 800, 1000, 1000 };
+        for (int retry = 1; retry <= expected.length; retry++) {
+            assertEquals(expected[retry - 1], policy.delayMillis(retry));
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure jitter keeps delays within the jitter fraction")
+    void jitterBounds() {
+        RetryPolicy policy = new RetryPolicy(10, 1000, 1000, 2.0, 0.25, 0);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 10000; i++) {
+            long delay = policy.delayMillis(3);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+
+        assertTrue(min >= 750, "min " + min);
+        assertTrue(max <= 1250, "max " + max);
+        // spread, not a constant
+        assertTrue(max - min > 250, "spread " + (max - min));
+    }
+
+    @Test
+    @DisplayName("Ensure invalid policies are rejected")
+    void invalidPolicy() {
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(0, 100, 1000, 2.0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(3, 1000, 100, 2.0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(3, 100, 1000, 0.5, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(3, 100, 1000, 2.0, 1.5, 0));
+    }
+
+    @Test
+    @DisplayName("Ensure the default policy gives up after 5 attempts instead of retrying forever")
+    void defaultGivesUp() {
+        Action action = failing(RetryPolicy.DEFAULT);
+
+        // the first execution counts, so 4 retries are scheduled
+        for (int i = 0; i < 4; i++) {
+            assertTrue(this.scheduler.retry(action));
+        }
+        assertFalse(this.scheduler.retry(action));
+        assertEquals(4, this.scheduler.getRetryCount());
+        assertEquals(1, this.scheduler.getExhaustedCount());
+
+        // the attempts start over once given up on
+        assertTrue(this.scheduler.retry(action));
+        this.scheduler.cancelAll();
+    }
+
+    @Test
+    @DisplayName("Ensure retries are requeued after their delay")
+    void requeue() throws InterruptedException {
+        Action action = failing(new RetryPolicy(3, 50, 50, 1.0, 0, 0));
+        long start = System.nanoTime();
+        assertTrue(this.scheduler.retry(action));
+
+        while (this.requeued.isEmpty() && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, this.requeued.size());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        this.scheduler.succeeded(action);
+        assertEquals(1, this.scheduler.getRecoveredCount());
+    }
+
+    @Test
+    @DisplayName("Ensure no retry is scheduled past the deadline")
+    void deadline() {
+        Action action = failing(new RetryPolicy(10, 100, 1000, 2.0, 0, 250));
+
+        assertTrue(this.scheduler.retry(action));
+        assertTrue(this.scheduler.retry(action));
+        // a third retry would wait 400 ms, past the 250 ms deadline
+        assertFalse(this.scheduler.retry(action));
+        assertEquals(1, this.scheduler.getExhaustedCount());
+        this.scheduler.cancelAll();
+        assertTrue(this.requeued.isEmpty());
+    }
+}
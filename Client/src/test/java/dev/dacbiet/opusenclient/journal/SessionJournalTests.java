@@ -0,0 +1,62 @@
+package dev.dacbiet.opusenclient.journal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SessionJournalTests {
+
+    // 2, 3 and 4 byte UTF-8 characters
+    private static final String TEXT = "{\"M\":\"activatechannel\",\"\u00e9\":\"\u20ac\ud83d\ude00\"}";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("Records are read back in order")
+    void readBack() throws IOException {
+        Path file = this.dir.resolve("session.journal");
+        try (SessionJournal journal = SessionJournal.create(file, 4096)) {
+            assertTrue(journal.append(SessionJournal.APDU_COMMAND, 7, new byte[] { 0, -92, 4, 0 }));
+            assertTrue(journal.append(SessionJournal.APDU_RESPONSE, 7, null));
+            assertTrue(journal.appendText(SessionJournal.HUB_EVENT, 8, TEXT));
+        }
+
+        List<JournalRecord> records = SessionJournal.read(file);
+        assertEquals(3, records.size());
+
+        assertEquals(SessionJournal.APDU_COMMAND, records.get(0).getType());
+        assertEquals(7, records.get(0).getSessionId());
+        assertArrayEquals(new byte[] { 0, -92, 4, 0 }, records.get(0).getPayload());
+
+        assertEquals(0, records.get(1).getPayload().length);
+
+        assertEquals(8, records.get(2).getSessionId());
+        assertEquals(TEXT, records.get(2).getText());
+        assertTrue(records.get(2).getNanos() >= records.get(0).getNanos());
+    }
+
+    @Test
+    @DisplayName("Records past the capacity are dropped and counted")
+    void dropWhenFull() throws IOException {
+        Path file = this.dir.resolve("full.journal");
+        int capacity = SessionJournal.HEADER_SIZE + 2 * (SessionJournal.RECORD_HEADER_SIZE + 10) + 1;
+        try (SessionJournal journal = SessionJournal.create(file, capacity)) {
+            assertTrue(journal.append(SessionJournal.SVH_REQUEST, 1, new byte[10]));
+            assertTrue(journal.append(SessionJournal.SVH_RESPONSE, 1, new byte[10]));
+            assertFalse(journal.append(SessionJournal.SVH_REQUEST, 1, new byte[1]));
+            assertEquals(1, journal.getDroppedCount());
+        }
+
+        assertEquals(2, SessionJournal.read(file).size());
+    }
+}
@@ -0,0 +1,182 @@
+package dev.dacbiet.opusenclient.nfc;
+
+import dev.dacbiet.opusenclient.ApduCommandProcessor;
+import dev.dacbiet.opusenclient.Client;
+import dev.dacbiet.opusenclient.ConnectionInfo;
+import dev.dacbiet.opusenclient.NfcHandler;
+import dev.dacbiet.opusenclient.actions.ConstructATRAction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.dacbiet.opusenclient.nfc.CalypsoCardEmulator.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CachingNfcHandlerTests {
+
+    private static final byte[] SELECT = new byte[] { 0, INS_SELECT, 4, 0, 8, 49, 84, 73, 67, 46, 73, 67, 65 };
+    private static final byte[] GET_RESPONSE = new byte[] { 0, INS_GET_RESPONSE, 0, 0, 0 };
+
+    private CalypsoCardEmulator card;
+    private List<byte[]> sent;
+    private ApduCommandProcessor processor;
+    private CachingNfcHandler cache;
+
+    @BeforeEach
+    void setup() {
+        this.card = new CalypsoCardEmulator(123456789L);
+        this.sent = new ArrayList<>();
+        NfcHandler counting = (data) -> {
+            this.sent.add(data);
+            return this.card.send(data);
+        };
+        this.processor = new ApduCommandProcessor();
+        this.cache = new CachingNfcHandler(counting, this.processor);
+    }
+
+    private static byte[] read(int sfi, int record) {
+        return new byte[] { -108, INS_READ_RECORD, (byte) record, (byte) ((sfi << 3) | 4), RECORD_SIZE };
+    }
+
+    // like ApduCommandAction does, so the processor follows secure sessions
+    private byte[] exchange(byte[] command) {
+        byte[] resp = this.cache.send(command);
+        this.processor.process(command, resp);
+        return resp;
+    }
+
+    @Test
+    @DisplayName("Repeated selects and reads are answered without the card")
+    void repeatedReads() {
+        byte[] select = exchange(SELECT);
+        byte[] record = exchange(read(SFI_CONTRACTS, 1));
+
+        assertArrayEquals(select, exchange(SELECT));
+        assertArrayEquals(record, exchange(read(SFI_CONTRACTS, 1)));
+        assertEquals(2, this.sent.size());
+        assertEquals(2, this.cache.getHits());
+    }
+
+    @Test
+    @DisplayName("The GET RESPONSE of a chained select is answered from memory too")
+    void chainedSelect() {
+        this.card.setChaining(true);
+        exchange(SELECT);
+        byte[] fci = exchange(GET_RESPONSE);
+
+        assertArrayEquals(new byte[] { -112, 0 }, exchange(SELECT));
+        assertArrayEquals(fci, exchange(GET_RESPONSE));
+        assertEquals(2, this.sent.size());
+
+        // the card must get the select again before a GET RESPONSE it was never asked
+        exchange(SELECT);
+        byte[] part = exchange(new byte[] { 0, INS_GET_RESPONSE, 0, 0, 10 });
+        assertEquals(12, part.length);
+        assertEquals(4, this.sent.size());
+    }
+
+    @Test
+    @DisplayName("Writes and secure sessions forget what was read")
+    void invalidation() {
+        exchange(SELECT);
+        exchange(read(SFI_CONTRACTS, 1));
+
+        exchange(new byte[] { 0, INS_OPEN_SECURE_SESSION, 8, SFI_ENVIRONMENT << 3, 4, 1, 2, 3, 4 });
+        exchange(read(SFI_CONTRACTS, 1));
+        exchange(read(SFI_CONTRACTS, 1));
+        assertEquals(5, this.sent.size());
+
+        exchange(new byte[] { 0, INS_UPDATE_RECORD, 1, (SFI_CONTRACTS << 3) | 4, 1, 7 });
+        exchange(new byte[] { 0, INS_CLOSE_SECURE_SESSION, P1_IMMEDIATE_RATIFY, 0, 4, 9, 9, 9, 9 });
+
+        // selected state was forgotten, the card answers with the written record
+        exchange(SELECT);
+        byte[] record = exchange(read(SFI_CONTRACTS, 1));
+        assertEquals(7, record[0]);
+        assertEquals(9, this.sent.size());
+        assertEquals(0, this.cache.getHits());
+    }
+
+    @Test
+    @DisplayName("Reads of the current file or a relative record always go to the card")
+    void stateDependentReads() {
+        byte[] currentFile = new byte[] { -108, INS_READ_RECORD, 1, 4, RECORD_SIZE };
+        byte[] nextRecord = new byte[] { -108, INS_READ_RECORD, 0, (SFI_CONTRACTS << 3) | 2, RECORD_SIZE };
+
+        exchange(SELECT);
+        exchange(currentFile);
+        exchange(read(SFI_ENVIRONMENT, 1));
+        // the current file is now the environment, it must not be answered with what was read before
+        exchange(currentFile);
+        assertEquals(4, this.sent.size());
+
+        assertEquals(0, this.cache.getHits());
+
+        exchange(SELECT);
+        exchange(read(SFI_ENVIRONMENT, 1));
+        exchange(read(SFI_ENVIRONMENT, 1));
+        assertEquals(1, this.cache.getHits());
+
+        // a relative read moves the card too, what was read is forgotten
+        exchange(nextRecord);
+        exchange(read(SFI_ENVIRONMENT, 1));
+        assertEquals(8, this.sent.size());
+        assertEquals(1, this.cache.getHits());
+    }
+
+    @Test
+    @DisplayName("Reads of the current record are never answered from memory")
+    void currentRecordReads() {
+        // a card with a record pointer, record 0 is the record last read
+        List<byte[]> toCard = new ArrayList<>();
+        CachingNfcHandler cache = new CachingNfcHandler(data -> {
+            toCard.add(data);
+            return new byte[] { (byte) toCard.size(), -112, 0 };
+        }, this.processor);
+        byte[] currentRecord = new byte[] { -108, INS_READ_RECORD, 0, (SFI_ENVIRONMENT << 3) | 4, RECORD_SIZE };
+
+        cache.send(SELECT);
+        cache.send(currentRecord);
+        assertArrayEquals(new byte[] { 3, -112, 0 }, cache.send(currentRecord));
+        assertEquals(3, toCard.size());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    @DisplayName("Records read ahead at session start answer the server's reads")
+    void readAhead() {
+        this.cache.setReadAhead(CachingNfcHandler.calypsoReadAhead());
+        assertEquals(0, this.cache.readAhead());
+
+        exchange(SELECT);
+        assertEquals(9, this.cache.readAhead());
+        assertEquals(0, this.cache.readAhead());
+        int sent = this.sent.size();
+
+        exchange(read(SFI_ENVIRONMENT, 1));
+        exchange(read(SFI_COUNTERS, 1));
+        assertEquals(sent, this.sent.size());
+        assertEquals(2, this.cache.getHits());
+    }
+
+    @Test
+    @DisplayName("Getting the card id again does not touch the card")
+    void cardIdAgain() {
+        this.card.setChaining(true);
+        Client client = new Client(new ConnectionInfo("https://localhost/hub", "1", "", "https://localhost/svh"));
+        client.setDataHandler(this.card);
+        client.setReadAhead(CachingNfcHandler.calypsoReadAhead());
+
+        // chained reads need a GET RESPONSE, they are left to the server
+        assertTrue(new ConstructATRAction(client).exec());
+        long misses = client.getReadCache().getMisses();
+        assertTrue(new ConstructATRAction(client).exec());
+        assertEquals(misses, client.getReadCache().getMisses());
+        assertEquals("123456789", client.getCardId());
+    }
+}
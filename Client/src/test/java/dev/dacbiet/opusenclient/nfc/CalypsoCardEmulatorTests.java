@@ -0,0 +1,132 @@
+package dev.dacbiet.opusenclient.nfc;
+
+import dev.dacbiet.opusenclient.Client;
+import dev.dacbiet.opusenclient.ConnectionInfo;
+import dev.dacbiet.opusenclient.actions.ConstructATRAction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static dev.dacbiet.opusenclient.nfc.CalypsoCardEmulator.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CalypsoCardEmulatorTests {
+
+    private static final byte[] SELECT = new byte[] { 0, INS_SELECT, 4, 0, 8, 49, 84, 73, 67, 46, 73, 67, 65 };
+
+    private CalypsoCardEmulator card;
+
+    @BeforeEach
+    void setup() {
+        this.card = new CalypsoCardEmulator(123456789L);
+    }
+
+    private static byte[] status(byte[] resp) {
+        return new byte[] { resp[resp.length - 2], resp[resp.length - 1] };
+    }
+
+    private byte[] openSession(int sfi, int record) {
+        return this.card.send(new byte[] { 0, INS_OPEN_SECURE_SESSION, (byte) (record << 3), (byte) (sfi << 3), 4, 1, 2, 3, 4 });
+    }
+
+    private byte[] closeSession(byte p1) {
+        return this.card.send(new byte[] { 0, INS_CLOSE_SECURE_SESSION, p1, 0, 4, 9, 9, 9, 9 });
+    }
+
+    private byte[] update(int sfi, int record, byte... data) {
+        byte[] cmd = new byte[5 + data.length];
+        cmd[1] = INS_UPDATE_RECORD;
+        cmd[2] = (byte) record;
+        cmd[3] = (byte) ((sfi << 3) | 4);
+        cmd[4] = (byte) data.length;
+        System.arraycopy(data, 0, cmd, 5, data.length);
+        return this.card.send(cmd);
+    }
+
+    @Test
+    @DisplayName("ATR construction reads the card id from the emulated select response")
+    void constructATR() {
+        for (boolean chaining : new boolean[] { false, true }) {
+            this.card.setChaining(chaining);
+            Client client = new Client(new ConnectionInfo("https://localhost/hub", "1", "", "https://localhost/svh"));
+            client.setDataHandler(this.card);
+
+            assertTrue(new ConstructATRAction(client).exec());
+            assertEquals("123456789", client.getCardId());
+        }
+    }
+
+    @Test
+    @DisplayName("Writes are only applied when the secure session is closed")
+    void sessionWrites() {
+        this.card.send(SELECT);
+        assertArrayEquals(SW_SECURITY_NOT_SATISFIED, update(SFI_CONTRACTS, 1, (byte) 7));
+
+        assertArrayEquals(SW_OK, status(openSession(SFI_ENVIRONMENT, 1)));
+        assertArrayEquals(SW_OK, update(SFI_CONTRACTS, 1, (byte) 7));
+        assertEquals(0, this.card.getRecord(SFI_CONTRACTS, 1)[0]);
+
+        assertArrayEquals(SW_OK, status(closeSession(P1_IMMEDIATE_RATIFY)));
+        assertEquals(7, this.card.getRecord(SFI_CONTRACTS, 1)[0]);
+        assertFalse(this.card.isSessionOpen());
+    }
+
+    @Test
+    @DisplayName("A session closed without ratification stays unratified if the card is taken away")
+    void ratification() {
+        this.card.send(SELECT);
+        openSession(SFI_ENVIRONMENT, 1);
+        closeSession((byte) 0);
+        this.card.setPresent(false);
+        assertNull(this.card.send(SELECT));
+        assertFalse(this.card.isLastSessionRatified());
+
+        this.card.setPresent(true);
+        this.card.send(SELECT);
+        byte[] resp = openSession(SFI_ENVIRONMENT, 1);
+        assertEquals(1, resp[4]);
+
+        // the next command ratifies a session closed without immediate ratification
+        closeSession((byte) 0);
+        this.card.send(new byte[] { 0, INS_GET_CHALLENGE, 0, 0, 8 });
+        assertTrue(this.card.isLastSessionRatified());
+    }
+
+    @Test
+    @DisplayName("GET RESPONSE hands over chained data in parts")
+    void getResponseChaining() {
+        this.card.setChaining(true);
+        assertArrayEquals(SW_OK, this.card.send(SELECT));
+
+        byte[] first = this.card.send(new byte[] { 0, INS_GET_RESPONSE, 0, 0, 10 });
+        assertEquals(12, first.length);
+        assertEquals(0x61, first[10]);
+        assertEquals(26, first[11]);
+
+        byte[] rest = this.card.send(new byte[] { 0, INS_GET_RESPONSE, 0, 0, 0 });
+        assertArrayEquals(SW_OK, status(rest));
+        assertEquals(28, rest.length);
+        assertArrayEquals(SW_CONDITIONS_NOT_SATISFIED, this.card.send(new byte[] { 0, INS_GET_RESPONSE, 0, 0, 0 }));
+    }
+
+    @Test
+    @DisplayName("Ensure an interrupted thread is answered without waiting out the latency")
+    void interruptedLatency() {
+        this.card.setLatency(ReplayLatency.fixed(10, TimeUnit.SECONDS));
+        Thread.currentThread().interrupt();
+        try {
+            long start = System.nanoTime();
+            assertArrayEquals(SW_OK, status(this.card.send(SELECT)));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
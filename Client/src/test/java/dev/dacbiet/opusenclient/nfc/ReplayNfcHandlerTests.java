@@ -0,0 +1,124 @@
+package dev.dacbiet.opusenclient.nfc;
+
+import dev.dacbiet.opusenclient.journal.JournalingNfcHandler;
+import dev.dacbiet.opusenclient.journal.SessionJournal;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ReplayNfcHandlerTests {
+
+    private static final String[] TRACE = new String[] {
+            "# select, two reads, a secure session",
+            "> 00 A4 04 00 08 31 54 49 43 2E 49 43 41",
+            "< 6F 02 84 00 90 00 @ 1500",
+            "> 94 B2 01 3C 1D",
+            "< 01 02 03 90 00",
+            "> 94 B2 01 4C 1D",
+            "< 04 05 06 90 00",
+            "",
+            "> 94 8A 0B 39 04 11 22 33 44",
+            "< 07 08 90 00",
+            "> 94 B2 01 3C 1D",
+            "< 0A 0B 0C 90 00",
+            "> 00 B2 09 3C 1D",
+            "<",
+    };
+
+    @TempDir
+    Path dir;
+
+    private static byte[] hex(String hex) {
+        return ApduTrace.hexToBytes(hex);
+    }
+
+    private static ReplayNfcHandler replay() {
+        return new ReplayNfcHandler(ApduTrace.fromHexTrace(Arrays.asList(TRACE)), ReplayLatency.none());
+    }
+
+    @Test
+    @DisplayName("Hex traces are parsed with their latency and missing responses")
+    void parseHexTrace() {
+        ApduTrace trace = ApduTrace.fromHexTrace(Arrays.asList(TRACE));
+
+        assertEquals(6, trace.size());
+        assertArrayEquals(hex("00A4040008315449432E494341"), trace.getExchanges().get(0).getCommand());
+        assertEquals(1500000, trace.getExchanges().get(0).getLatencyNanos());
+        assertEquals(0, trace.getExchanges().get(1).getLatencyNanos());
+        assertNull(trace.getExchanges().get(5).getResponse());
+
+        assertThrows(IllegalArgumentException.class, () -> ApduTrace.fromHexTrace(Arrays.asList("00 A4")));
+        assertThrows(IllegalArgumentException.class, () -> ApduTrace.fromHexTrace(Arrays.asList("> 00 A")));
+    }
+
+    @Test
+    @DisplayName("A session recorded to the journal is replayed in order")
+    void replayRecorded() throws IOException {
+        CalypsoCardEmulator card = new CalypsoCardEmulator(42);
+        card.setRecord(CalypsoCardEmulator.SFI_ENVIRONMENT, 1, new byte[] { 1, 2, 3 });
+        byte[] select = hex("00A4040008315449432E494341");
+        byte[] read = hex("94B2013C1D");
+
+        Path file = this.dir.resolve("replay.journal");
+        byte[] selected;
+        byte[] record;
+        try (SessionJournal journal = SessionJournal.create(file, 4096)) {
+            JournalingNfcHandler recording = new JournalingNfcHandler(card, journal, 5);
+            selected = recording.send(select);
+            record = recording.send(read);
+        }
+
+        ReplayNfcHandler replay = new ReplayNfcHandler(ApduTrace.fromJournal(file, 5), ReplayLatency.none());
+        assertArrayEquals(selected, replay.send(select));
+        assertArrayEquals(record, replay.send(read));
+        assertEquals(0, replay.getMissCount());
+    }
+
+    @Test
+    @DisplayName("Commands are matched by header, then searched forward, then from the start")
+    void reordered() {
+        ReplayNfcHandler replay = replay();
+
+        // the second read is asked first, found further on
+        assertArrayEquals(hex("040506 9000"), replay.send(hex("94B2014C1D")));
+
+        // same header as the next recorded exchange, a different cryptogram
+        assertArrayEquals(hex("0708 9000"), replay.send(hex("948A0B390455667788")));
+
+        // the next exchange is the read after the session
+        assertArrayEquals(hex("0A0B0C 9000"), replay.send(hex("94B2013C1D")));
+
+        // nothing after the cursor, found again from the start
+        assertArrayEquals(hex("6F02840090 00"), replay.send(hex("00A4040008315449432E494341")));
+        assertArrayEquals(hex("010203 9000"), replay.send(hex("94B2013C1D")));
+
+        replay.rewind();
+        assertArrayEquals(hex("6F02840090 00"), replay.send(hex("00A4040008315449432E494341")));
+        assertEquals(0, replay.getMissCount());
+    }
+
+    @Test
+    @DisplayName("A command that was never recorded gets no answer")
+    void miss() {
+        ReplayNfcHandler replay = replay();
+
+        assertNull(replay.send(hex("00840000 08")));
+        assertEquals(1, replay.getMissCount());
+
+        // the cursor did not move on the miss
+        assertArrayEquals(hex("6F02840090 00"), replay.send(hex("00A4040008315449432E494341")));
+
+        // a recorded missing response is not a miss
+        assertNull(replay.send(hex("00B2093C1D")));
+        assertEquals(1, replay.getMissCount());
+    }
+}
@@ -0,0 +1,154 @@
+package dev.dacbiet.opusenclient.packets;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ApduCodecTests {
+
+    private static final int OPERATION_ID = 0x01020304;
+
+    private static byte[] commandPacket(byte[]... commands) {
+        ByteBuffer buf = ByteBuffer.allocate(1024);
+        buf.put((byte) 16);
+        buf.put((byte) -17);
+        buf.putShort((short) 0);
+        buf.put((byte) 7);
+        buf.putInt(OPERATION_ID);
+        buf.put((byte) 0);
+        buf.putShort((short) 0);
+        buf.put((byte) commands.length);
+        for (byte[] command : commands) {
+            buf.put((byte) command.length);
+            buf.put(command);
+        }
+        buf.put((byte) 0);
+        buf.put((byte) 0);
+        byte[] out = Arrays.copyOf(buf.array(), buf.position());
+        out[2] = (byte) ((out.length - 4) >> 8);
+        out[3] = (byte) (out.length - 4);
+        return out;
+    }
+
+    @Test
+    @DisplayName("Ensure commands are read like ApduDataPacket reads them")
+    void decodeMatchesPacket() {
+        byte[] packet = commandPacket(new byte[] { 0, -92, 4, 0 }, new byte[] { -108, -78, 1, 60, 29 });
+
+        ApduDataPacket legacy = new ApduDataPacket();
+        legacy.deserialize(ByteBuffer.wrap(packet));
+        ApduBatch batch = new ApduCodec().decode(packet);
+
+        assertEquals(legacy.getConnectionId(), batch.getConnectionId());
+        assertEquals(legacy.getConnectionState(), batch.getConnectionState());
+        assertEquals(legacy.getMsgNum(), batch.getMsgNum());
+        assertEquals(legacy.getCommands().size(), batch.getCommandCount());
+        for (int i = 0; i < batch.getCommandCount(); i++) {
+            assertArrayEquals(legacy.getCommands().get(i).getData(), batch.copyCommand(i));
+        }
+        assertSame(packet, batch.getPacket());
+    }
+
+    @Test
+    @DisplayName("Ensure responses are written like ApduResponseDataPacket writes them")
+    void encodeMatchesPacket() {
+        List<Apdu> responses = new ArrayList<>();
+        responses.add(new Apdu(new byte[] { 111, 0 }));
+        responses.add(new Apdu(new byte[] { 1, 2, 3, -112, 0 }));
+
+        byte[] expected = new ApduResponseDataPacket(true, OPERATION_ID, (byte) 7, responses).serialize();
+
+        ApduCodec codec = new ApduCodec();
+        codec.beginResponse((byte) 16, (byte) -17, (byte) 7, OPERATION_ID, true);
+        for (Apdu response : responses) {
+            codec.addResponse(response.getData());
+        }
+        assertArrayEquals(expected, codec.finishResponse());
+
+        // the buffer is reused for the next packet
+        codec.beginResponse((byte) 16, (byte) -17, (byte) 7, OPERATION_ID, true);
+        for (Apdu response : responses) {
+            codec.addResponse(response.getData());
+        }
+        assertArrayEquals(expected, codec.finishResponse());
+    }
+
+    @Test
+    @DisplayName("Ensure the output buffer grows for large batches")
+    void encodeGrows() {
+        ApduCodec codec = new ApduCodec();
+        codec.beginResponse((byte) 16, (byte) -17, (byte) 1, OPERATION_ID, true);
+        byte[] response = new byte[200];
+        for (int i = 0; i < 10; i++) {
+            codec.addResponse(response);
+        }
+
+        byte[] packet = codec.finishResponse();
+        assertEquals(13 + 10 * 201 + 2, packet.length);
+        assertEquals(packet.length - 4, (packet[2] & 0xFF) << 8 | (packet[3] & 0xFF));
+        assertEquals(10, packet[12]);
+    }
+
+    @Test
+    @DisplayName("Ensure lengths over 127 are read unsigned")
+    void unsignedLengths() {
+        byte[] command = new byte[200];
+        command[4] = (byte) 195;
+        byte[][] commands = new byte[130][];
+        Arrays.fill(commands, new byte[] { 0, -64, 0, 0, 2 });
+        commands[0] = command;
+        byte[] packet = commandPacket(commands);
+
+        ApduDataPacket legacy = new ApduDataPacket();
+        legacy.deserialize(ByteBuffer.wrap(packet));
+        ApduBatch batch = new ApduCodec().decode(packet);
+
+        assertEquals(130, legacy.getCommands().size());
+        assertEquals(130, batch.getCommandCount());
+        assertArrayEquals(command, legacy.getCommands().get(0).getData());
+        assertArrayEquals(command, batch.copyCommand(0));
+        assertEquals(packet.length - 4, legacy.getLength());
+    }
+
+    @Test
+    @DisplayName("Ensure responses over 255 bytes are refused instead of truncated")
+    void responseTooLong() {
+        List<Apdu> responses = new ArrayList<>();
+        responses.add(new Apdu(new byte[258]));
+
+        assertThrows(PacketException.class, () -> new ApduResponseDataPacket(true, OPERATION_ID, (byte) 1, responses).serialize());
+
+        ApduCodec codec = new ApduCodec();
+        codec.beginResponse((byte) 16, (byte) -17, (byte) 1, OPERATION_ID, true);
+        assertThrows(PacketException.class, () -> codec.addResponse(new byte[258]));
+    }
+
+    @Test
+    @DisplayName("Ensure extended length commands are recognized")
+    void extendedLength() {
+        assertFalse(Apdu.isExtendedLength(new byte[] { 0, -78, 1, 12, 0 }));
+        assertFalse(Apdu.isExtendedLength(new byte[] { 0, -92, 4, 0, 2, 63, 0 }));
+        assertTrue(Apdu.isExtendedLength(new byte[] { 0, -80, 0, 0, 0, 1, 0 }));
+        assertTrue(Apdu.isExtendedLength(new byte[] { 0, -42, 0, 0, 0, 0, 1, 42 }));
+    }
+
+    @Test
+    @DisplayName("Ensure truncated packets are rejected")
+    void decodeTruncated() {
+        byte[] packet = commandPacket(new byte[] { 0, -92, 4, 0 });
+        byte[] truncated = Arrays.copyOf(packet, packet.length - 4);
+
+        assertThrows(PacketDeserializationException.class, () -> new ApduCodec().decode(truncated));
+    }
+}
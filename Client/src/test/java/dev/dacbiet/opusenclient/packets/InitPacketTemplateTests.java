@@ -0,0 +1,89 @@
+package dev.dacbiet.opusenclient.packets;
+
+import dev.dacbiet.opusenclient.Client;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class InitPacketTemplateTests {
+
+    private static final String TERMINAL = "Test Reader 0";
+    private static final byte[] ATR = new byte[] { 59, 111, 0, 0, -128, 90, 10, 60, 32, 5, 16, 1, 7, 91, -51, 21, -126, -112, 0 };
+
+    private static void putField(ByteBuffer buf, int tag, byte[] value) {
+        buf.put((byte) tag);
+        buf.put((byte) value.length);
+        buf.put(value);
+    }
+
+    @Test
+    @DisplayName("Ensure every field is written in order when all are demanded")
+    void encodeEveryField() {
+        byte[] terminal = TERMINAL.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(512);
+        buf.put((byte) 48);
+        buf.put((byte) -49);
+        buf.putShort((short) 0);
+        buf.put((byte) 2);
+        buf.put((byte) 6);
+        buf.put((byte) 1);
+        buf.put((byte) 4);
+        buf.putInt(123456);
+        putField(buf, 2, ATR);
+        putField(buf, 3, terminal);
+        putField(buf, 4, terminal);
+        putField(buf, 5, "Windows 10".getBytes(StandardCharsets.UTF_8));
+        putField(buf, 6, Client.XSCP_VERSION.getBytes(StandardCharsets.UTF_8));
+        buf.put((byte) 0);
+        buf.put((byte) 0);
+        byte[] expected = Arrays.copyOf(buf.array(), buf.position());
+        expected[3] = (byte) (expected.length - 4);
+
+        assertArrayEquals(expected, InitPacketTemplate.forTerminal(TERMINAL).encode((byte) 2, 123456, -1, ATR));
+        assertArrayEquals(expected, new InitConnectionPacket((byte) 2, 123456, (short) -1, TERMINAL, ATR).serialize());
+    }
+
+    @Test
+    @DisplayName("Ensure only the demanded fields are written")
+    void encodeDemandedFields() {
+        byte[] terminal = TERMINAL.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(512);
+        buf.put((byte) 48);
+        buf.put((byte) -49);
+        buf.putShort((short) 0);
+        buf.put((byte) 5);
+        buf.put((byte) 2);
+        putField(buf, 2, ATR);
+        putField(buf, 4, terminal);
+        buf.put((byte) 0);
+        buf.put((byte) 0);
+        byte[] expected = Arrays.copyOf(buf.array(), buf.position());
+        expected[3] = (byte) (expected.length - 4);
+
+        InitPacketTemplate template = InitPacketTemplate.forTerminal(TERMINAL);
+        int type = InitPacketTemplate.TYPE_ATR | InitPacketTemplate.TYPE_READER;
+        assertEquals(expected.length, template.size(type, ATR));
+        assertArrayEquals(expected, template.encode((byte) 5, 123456, type, ATR));
+
+        byte[] out = new byte[expected.length + 10];
+        assertEquals(expected.length, template.encode(out, 10, (byte) 5, 123456, type, ATR));
+        assertArrayEquals(expected, Arrays.copyOfRange(out, 10, out.length));
+
+        // the ATR is only read when demanded
+        int reader = InitPacketTemplate.TYPE_READER;
+        assertArrayEquals(template.encode((byte) 5, 123456, reader, ATR), template.encode((byte) 5, 123456, reader, null));
+    }
+
+    @Test
+    @DisplayName("Ensure templates are shared per terminal")
+    void sharedTemplate() {
+        assertSame(InitPacketTemplate.forTerminal(TERMINAL), InitPacketTemplate.forTerminal(TERMINAL));
+    }
+}
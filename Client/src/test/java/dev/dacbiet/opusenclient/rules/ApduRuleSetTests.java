@@ -0,0 +1,102 @@
+package dev.dacbiet.opusenclient.rules;
+
+import dev.dacbiet.opusenclient.ApduCommandProcessor;
+import dev.dacbiet.opusenclient.ApduHistory;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static dev.dacbiet.opusenclient.ApduCommandProcessor.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ApduRuleSetTests {
+
+    private static Properties defaultsAsProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("rules", "ratify, fake-write, close-response");
+        properties.setProperty("rule.ratify.ins", "8E");
+        properties.setProperty("rule.ratify.p1", "00");
+        properties.setProperty("rule.ratify.setP1", "80");
+        properties.setProperty("rule.fake-write.ins", "C0");
+        properties.setProperty("rule.fake-write.afterIns", "D2,DC");
+        properties.setProperty("rule.fake-write.openCount", "2");
+        properties.setProperty("rule.fake-write.closeCount", "1");
+        properties.setProperty("rule.fake-write.respond", "6985");
+        properties.setProperty("rule.close-response.ins", "C0");
+        properties.setProperty("rule.close-response.afterIns", "8E");
+        properties.setProperty("rule.close-response.openCount", "2");
+        properties.setProperty("rule.close-response.closeCount", "2");
+        properties.setProperty("rule.close-response.respond", "previous");
+        return properties;
+    }
+
+    @Test
+    @DisplayName("Ensure rules loaded from properties rewrite like the defaults")
+    void loadedRulesMatchDefaults() {
+        ApduCommandProcessor p = new ApduCommandProcessor(new ApduHistory(), ApduRuleSet.load(defaultsAsProperties()));
+        byte[] oss = new byte[] { 0, CLS_OPEN_SECURE_SESSION };
+        byte[] css = new byte[] { 0, CLS_CLOSE_SECURE_SESSION, 0 };
+
+        p.preProcess(css);
+        assertEquals(P1_IMMEDIATE_RATIFY, css[2]);
+
+        assertNull(p.process(oss, new byte[0]));
+        assertNull(p.process(css, new byte[0]));
+        assertNull(p.process(oss, new byte[0]));
+        assertNull(p.process(new byte[] { 0, CLS_WRITE_RECORD }, new byte[0]));
+        assertArrayEquals(FAKE_UPDATE_WRITE_RESPONSE, p.process(new byte[] { 0, CLS_GET_RESPONSE }, new byte[0]));
+
+        byte[] closeResponse = new byte[] { 1, 2, 3, -112, 0 };
+        assertNull(p.process(css, closeResponse));
+        assertArrayEquals(closeResponse, p.process(new byte[] { 0, CLS_GET_RESPONSE }, new byte[0]));
+
+        ApduRuleEngine engine = p.getRuleEngine();
+        assertEquals(1, engine.getHits("ratify"));
+        assertEquals(1, engine.getHits("fake-write"));
+        assertEquals(1, engine.getHits("close-response"));
+    }
+
+    @Test
+    @DisplayName("Ensure rules stop applying after their maximum hits")
+    void maxHits() {
+        Properties properties = new Properties();
+        properties.setProperty("rules", "once");
+        properties.setProperty("rule.once.ins", "B2");
+        properties.setProperty("rule.once.respond", "6A82");
+        properties.setProperty("rule.once.maxHits", "1");
+
+        ApduCommandProcessor p = new ApduCommandProcessor(new ApduHistory(), ApduRuleSet.load(properties));
+        byte[] read = new byte[] { -108, -78, 1, 60, 29 };
+        assertArrayEquals(new byte[] { 106, -126 }, p.process(read, new byte[] { -112, 0 }));
+        assertNull(p.process(read, new byte[] { -112, 0 }));
+        assertEquals(1, p.getRuleEngine().getHits("once"));
+    }
+
+    @Test
+    @DisplayName("Ensure commands without rules are left alone")
+    void noRules() {
+        ApduCommandProcessor p = new ApduCommandProcessor(new ApduHistory(), ApduRuleSet.empty());
+        byte[] css = new byte[] { 0, CLS_CLOSE_SECURE_SESSION, 0 };
+
+        p.preProcess(css);
+        assertEquals(0, css[2]);
+        assertNull(p.process(css, new byte[0]));
+    }
+
+    @Test
+    @DisplayName("Ensure invalid rules are rejected")
+    void invalidRules() {
+        Properties properties = new Properties();
+        properties.setProperty("rules", "broken");
+        properties.setProperty("rule.broken.ins", "B2");
+        assertThrows(IllegalArgumentException.class, () -> ApduRuleSet.load(properties));
+
+        properties.setProperty("rule.broken.ins", "1B2");
+        properties.setProperty("rule.broken.respond", "9000");
+        assertThrows(IllegalArgumentException.class, () -> ApduRuleSet.load(properties));
+    }
+}
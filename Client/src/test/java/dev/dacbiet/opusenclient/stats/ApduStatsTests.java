@@ -0,0 +1,127 @@
+package dev.dacbiet.opusenclient.stats;
+
+import dev.dacbiet.opusenclient.nfc.CalypsoCardEmulator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ApduStatsTests {
+
+    private static final byte[] READ = new byte[] { -108, -78, 1, 60, 29 };
+    private static final byte[] OPEN = new byte[] { 0, -118, 8, 56, 4, 1, 2, 3, 4 };
+    private static final byte[] CLOSE = new byte[] { 0, -114, -128, 0, 4, 9, 9, 9, 9 };
+    private static final byte[] OK = new byte[] { -112, 0 };
+
+    @Test
+    @DisplayName("Ensure bucket bounds cover every value within the precision")
+    void buckets() {
+        for (long value = 0; value < 1 << 20; value += 1 + value / 100) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.highestValue(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highestValue(index - 1) < value);
+            assertTrue(LatencyHistogram.highestValue(index) - value <= value / 16);
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.index(LatencyHistogram.MAX_VALUE)));
+    }
+
+    @Test
+    @DisplayName("Ensure percentiles are within the precision")
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getMean());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500000, histogram.getValueAtPercentile(50), 500000 / 16.0);
+        assertEquals(990000, histogram.getValueAtPercentile(99), 990000 / 16.0);
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    @DisplayName("Ensure concurrent recording loses nothing")
+    void concurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    histogram.record(i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400000, histogram.getCount());
+        assertEquals(99999, histogram.getMax());
+    }
+
+    @Test
+    @DisplayName("Ensure exchanges are counted per instruction, status word and secure session")
+    void sessionStats() {
+        ApduStats aggregate = new ApduStats();
+        ApduStats session = new ApduStats();
+        session.setParent(aggregate);
+
+        session.recordExchange(READ, new byte[] { 1, 2, -112, 0 }, 0, 20000000);
+        session.recordExchange(READ, new byte[] { 106, -126 }, 20000000, 30000000);
+        session.recordExchange(OPEN, OK, 30000000, 60000000);
+        session.recordExchange(READ, OK, 60000000, 70000000);
+        session.recordExchange(CLOSE, OK, 70000000, 100000000);
+        session.recordExchange(READ, null, 100000000, 110000000);
+        session.recordProcessing(500);
+
+        for (ApduStats stats : new ApduStats[] { session, aggregate }) {
+            assertEquals(6, stats.getExchangeCount());
+            assertEquals(4, stats.getCardLatency((byte) -78).getCount());
+            assertEquals(20000000, stats.getCardLatency((byte) -78).getMax());
+            assertNull(stats.getCardLatency((byte) -92));
+            assertEquals(4, stats.getStatusWordCount(0x9000));
+            assertEquals(1, stats.getStatusWordCount(0x6A82));
+            assertEquals(1, stats.getProcessing().getCount());
+            assertEquals(1, stats.getSecureSessions().getCount());
+            assertEquals(70000000, stats.getSecureSessions().getMax());
+        }
+
+        String json = aggregate.toJson();
+        assertTrue(json.startsWith("{\"exchanges\":6,\"cardLatency\":{\"8A\":{\"count\":1,"), json);
+        assertTrue(json.contains("\"statusWords\":{\"none\":1,\"6A82\":1,\"9000\":4}"), json);
+    }
+
+    @Test
+    @DisplayName("Ensure secure sessions of chaining cards are timed")
+    void chainingSecureSession() {
+        ApduStats stats = new ApduStats();
+        stats.recordExchange(OPEN, new byte[] { 97, 8 }, 0, 10000000);
+        stats.recordExchange(new byte[] { 0, -64, 0, 0, 8 }, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, -112, 0 }, 10000000, 20000000);
+        stats.recordExchange(CLOSE, new byte[] { 97, 4 }, 20000000, 50000000);
+        assertEquals(1, stats.getSecureSessions().getCount());
+        assertEquals(50000000, stats.getSecureSessions().getMax());
+
+        CalypsoCardEmulator card = new CalypsoCardEmulator(42);
+        card.setChaining(true);
+        TimedNfcHandler timed = new TimedNfcHandler(card, stats);
+        timed.send(new byte[] { 0, -92, 4, 0, 8, 49, 84, 73, 67, 46, 73, 67, 65 });
+        timed.send(new byte[] { 0, -64, 0, 0, 0 });
+        timed.send(OPEN);
+        timed.send(new byte[] { 0, -64, 0, 0, 0 });
+        timed.send(CLOSE);
+        timed.send(new byte[] { 0, -64, 0, 0, 0 });
+        assertEquals(2, stats.getSecureSessions().getCount());
+    }
+}